@@ -0,0 +1,139 @@
+package uk.ac.rothamsted.neo4j.utils;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.exceptions.DatabaseException;
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import org.neo4j.driver.exceptions.TransientException;
+
+/**
+ * The default {@link RetryPolicy}: the errors in {@link #getRetriableExceptions()} are re-attempted after a pause
+ * that starts from {@link #getInitialPause()} and grows exponentially up to {@link #getMaxPause()}. A random
+ * {@link #getJitter() jitter} is applied to the pauses, so that the clients that failed together (typically,
+ * the parties of a deadlock) don't retry at the same time.
+ *
+ * <p>Data errors are the server-side client errors about the statement execution or the schema constraints,
+ * excluding the syntax errors, which are about the statement itself.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy
+{
+	private long initialPause = 100;
+	private long maxPause = 5000;
+	private double multiplier = 2;
+	private double jitter = 0.5;
+	private Set<Class<? extends Throwable>> retriableExceptions = Set.of (
+		TransientException.class,
+		DatabaseException.class,
+		ServiceUnavailableException.class,
+		SessionExpiredException.class
+	);
+
+	@Override
+	public long getRetryPause ( Throwable ex, int attempt )
+	{
+		if ( !isRetriable ( ex ) ) return -1;
+
+		double result = Math.min ( maxPause, initialPause * Math.pow ( multiplier, attempt - 1 ) );
+		result *= 1 - jitter * ThreadLocalRandom.current ().nextDouble ();
+		return Math.round ( result );
+	}
+
+	private boolean isRetriable ( Throwable ex )
+	{
+		for ( Class<? extends Throwable> retriable: retriableExceptions )
+			if ( retriable.isInstance ( ex ) ) return true;
+		return false;
+	}
+
+	@Override
+	public boolean isDataError ( Throwable ex )
+	{
+		if ( !( ex instanceof ClientException ) ) return false;
+
+		String code = ( (ClientException) ex ).code ();
+		if ( code == null ) return false;
+		if ( code.startsWith ( "Neo.ClientError.Statement." ) )
+			return !code.equals ( "Neo.ClientError.Statement.SyntaxError" );
+		return code.equals ( "Neo.ClientError.Schema.ConstraintValidationFailed" );
+	}
+
+
+	/**
+	 * The pause after the first failed attempt, in ms. Default is 100.
+	 */
+	public long getInitialPause ()
+	{
+		return initialPause;
+	}
+
+	public void setInitialPause ( long initialPause )
+	{
+		this.initialPause = initialPause;
+	}
+
+	/**
+	 * The max pause between attempts, in ms. Default is 5000.
+	 */
+	public long getMaxPause ()
+	{
+		return maxPause;
+	}
+
+	public void setMaxPause ( long maxPause )
+	{
+		this.maxPause = maxPause;
+	}
+
+	/**
+	 * How much the pause grows at each attempt. Default is 2.
+	 */
+	public double getMultiplier ()
+	{
+		return multiplier;
+	}
+
+	public void setMultiplier ( double multiplier )
+	{
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * The fraction of the pause that is randomised, eg, with 0.5, a pause of 1s becomes a random time between
+	 * 0.5s and 1s. Default is 0.5.
+	 *
+	 * @throws IllegalArgumentException if it's not between 0 and 1
+	 */
+	public double getJitter ()
+	{
+		return jitter;
+	}
+
+	public void setJitter ( double jitter )
+	{
+		if ( jitter < 0 || jitter > 1 ) throw new IllegalArgumentException (
+			"The retry policy jitter must be between 0 and 1"
+		);
+		this.jitter = jitter;
+	}
+
+	/**
+	 * The errors that are re-attempted. By default, these are transient errors (including deadlocks), server
+	 * errors and connection errors.
+	 */
+	public Set<Class<? extends Throwable>> getRetriableExceptions ()
+	{
+		return retriableExceptions;
+	}
+
+	public void setRetriableExceptions ( Set<Class<? extends Throwable>> retriableExceptions )
+	{
+		this.retriableExceptions = retriableExceptions;
+	}
+}
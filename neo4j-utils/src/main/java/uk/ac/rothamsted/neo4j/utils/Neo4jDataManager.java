@@ -3,22 +3,50 @@ package uk.ac.rothamsted.neo4j.utils;
 
 import static org.neo4j.driver.Values.parameters;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.neo4j.driver.Driver;
+import org.neo4j.driver.Query;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.Result;
 import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.TransactionConfig;
 import org.neo4j.driver.Values;
-import org.neo4j.driver.exceptions.DatabaseException;
-import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.exceptions.Neo4jException;
 import org.neo4j.driver.exceptions.TransientException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import uk.ac.ebi.utils.runcontrol.MultipleAttemptsExecutor;
 import uk.org.lidalia.slf4jext.Level;
 
 /**
@@ -30,49 +58,112 @@ import uk.org.lidalia.slf4jext.Level;
  */
 public class Neo4jDataManager
 {
+	/**
+	 * A semaphore and the limit it was created for.
+	 */
+	private static class DriverPermits
+	{
+		final int max;
+		final Semaphore semaphore;
+		
+		DriverPermits ( int max )
+		{
+			this.max = max;
+			this.semaphore = new Semaphore ( max );
+		}
+	}
+	
+	/** 
+	 * The session and async permits are per driver, so that the limits apply to all the managers that share the
+	 * same driver (eg, multiple loading sessions against the same database). Both are guarded by themselves.
+	 */
+	private static final Map<Driver, DriverPermits> SESSION_PERMITS = new WeakHashMap<> ();
+	private static final Map<Driver, DriverPermits> ASYNC_PERMITS = new WeakHashMap<> ();
+	
 	private Driver neo4jDriver;
 	private int maxRetries = 10;
 	private Level attemptMsgLogLevel = Level.DEBUG;
+	private int maxSessions = -1;
+	private Semaphore sessionPermits = null;
+	private int maxAsyncTransactions = Runtime.getRuntime ().availableProcessors ();
+	private Semaphore asyncPermits = null;
+	private RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy ();
+	private long txTimeout = -1;
+	private Path rejectsPath = null;
+	private LongAdder rejectedRowsCount = new LongAdder ();
+	
+	private LongAdder commitsCount = new LongAdder (), commitsTime = new LongAdder ();
+	private LongAccumulator maxCommitTime = new LongAccumulator ( Long::max, 0 );
+	
+	private Set<CompletableFuture<Void>> pendingAsyncWrites = ConcurrentHashMap.newKeySet ();
+	private ExecutorService dataErrorExecutor = null;
+	private AtomicReference<Throwable> asyncWriteError = new AtomicReference<> ();
 
 	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	private uk.org.lidalia.slf4jext.Logger attemptLog = uk.org.lidalia.slf4jext.LoggerFactory.getLogger ( this.getClass () );
 	
 	public Neo4jDataManager ( Driver neo4jDriver )
 	{
 		super ();
-		this.neo4jDriver = neo4jDriver;
+		setNeo4jDriver ( neo4jDriver );
 	}
 
 	/**
 	 * <p>Runs a Neo4j client session, which is created and given to the action as a parameter. The action can return
 	 * a value useful for the invoker of this method.</p> 
 	 * 
-	 * <p>Because parallelism sometimes raises exceptions about race conditions, we use {@link MultipleAttemptsExecutor}
-	 * to re-attempt the command execution a couple of times, after such exceptions.</p>
+	 * <p>Because parallelism sometimes raises exceptions about race conditions, the action is re-attempted
+	 * after such exceptions, as decided by {@link #getRetryPolicy()}, up to {@link #getMaxRetries()} times.</p>
 	 * 
 	 */
-	@SuppressWarnings ( "unchecked" )
 	public <V> V runSession ( Function<Session, V> action )
 	{
-		MultipleAttemptsExecutor attempter = new MultipleAttemptsExecutor (
-			TransientException.class,
-			DatabaseException.class,
-			ServiceUnavailableException.class
-		);
-		attempter.setMaxAttempts ( this.getMaxRetries () );
-		attempter.setMinPauseTime ( 3 * 1000 );
-		attempter.setMaxPauseTime ( 7 * 1000 );
-		attempter.setAttemptMsgLogLevel ( this.attemptMsgLogLevel );
-		
-		Object[] result = new Object [ 1 ];
-		attempter.execute ( () -> 
+		for ( int attempt = 1; ; attempt++ )
 		{
+			RuntimeException error;
+
+			// Taken at each attempt, so that we don't hold a permit while pausing between attempts
+			Semaphore permits = this.sessionPermits;
+			acquireSession ( permits );
 			try ( Session session = this.neo4jDriver.session () ) {
-				result [ 0 ] = action.apply ( session );
+				return action.apply ( session );
 			}
-		});
-		return (V) result [ 0 ];
+			catch ( RuntimeException ex ) {
+				error = ex;
+			}
+			finally {
+				if ( permits != null ) permits.release ();
+			}
+			
+			long pause = attempt < maxRetries ? retryPolicy.getRetryPause ( error, attempt ) : -1;
+			if ( pause < 0 ) throw error;
+			
+			attemptLog.log ( attemptMsgLogLevel, 
+				"Neo4j attempt {}/{} failed with \"{}\", retrying in {} ms", 
+				attempt, maxRetries, error.getMessage (), pause
+			);
+			try {
+				Thread.sleep ( pause );
+			}
+			catch ( InterruptedException ex ) {
+				Thread.currentThread ().interrupt ();
+				throw new GenericNeo4jException ( "Interrupted while waiting to re-attempt a Neo4j session", ex );
+			}
+		}
 	}
 
+	private void acquireSession ( Semaphore permits )
+	{
+		if ( permits == null ) return;
+		try {
+			permits.acquire ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new GenericNeo4jException ( "Interrupted while waiting for a Neo4j session", ex );
+		}
+	}
+	
 	/**
 	 * A convenience wrapper of {@link #runSession(Function)} that doesn't force the action executor to return a value, 
 	 * if that's not expected by the invoker of this method.
@@ -99,10 +190,473 @@ public class Neo4jDataManager
 		if ( log.isTraceEnabled () )
 			log.trace ( "Cypher: {} params: {}", cypher, ArrayUtils.toString ( keyVals ) );
 
-		this.runSession ( session -> session.run ( cypher, parameters ( keyVals ) ) );	
+		this.runSession ( session -> session.run ( new Query ( cypher, parameters ( keyVals ) ), getTransactionConfig () ) );
+	}
+	
+	
+	
+	
+	/**
+	 * <p>Runs a Cypher command in an auto-commit (aka implicit) transaction, which is needed by commands like
+	 * <code>CALL { ... } IN TRANSACTIONS</code>, which manage their own transactions on the server side.</p>
+	 * 
+	 * <p>Such commands might have committed part of their work when they fail, so, unlike 
+	 * {@link #runCypher(String, Object...)}, this is never re-attempted, since re-running the command might 
+	 * duplicate data. Use {@link #runAutoCommitCypher(boolean, String, Object...)} for idempotent commands. 
+	 * For the same reason, this isn't affected by {@link #getRejectsPath()}. It is affected by 
+	 * {@link #getMaxSessions()} and {@link #getTxTimeout()}.</p>
+	 */
+	public void runAutoCommitCypher ( String cypher, Object... keyVals )
+	{
+		runAutoCommitCypher ( false, cypher, keyVals );
+	}
+	
+	/**
+	 * If isIdempotent is true, the caller guarantees that re-running the command after a partial commit doesn't 
+	 * change the result (eg, the command is based on MERGE), so the command is run via 
+	 * {@link #runSession(Function)}, and errors like deadlocks ({@link TransientException}) are re-attempted 
+	 * as decided by {@link #getRetryPolicy()}. Else, this is the same as 
+	 * {@link #runAutoCommitCypher(String, Object...)}.
+	 */
+	public void runAutoCommitCypher ( boolean isIdempotent, String cypher, Object... keyVals )
+	{
+		if ( log.isTraceEnabled () )
+			log.trace ( "Auto-commit Cypher: {} params: {}", cypher, ArrayUtils.toString ( keyVals ) );
+
+		if ( isIdempotent ) {
+			runSession ( 
+				session -> session.run ( new Query ( cypher, parameters ( keyVals ) ), getTransactionConfig () ).consume () 
+			);
+			return;
+		}
+
+		Semaphore permits = this.sessionPermits;
+		acquireSession ( permits );
+		try ( Session session = this.neo4jDriver.session () ) {
+			session.run ( new Query ( cypher, parameters ( keyVals ) ), getTransactionConfig () ).consume ();
+		}
+		finally {
+			if ( permits != null ) permits.release ();
+		}
+	}
+	
+	/**
+	 * <p>Runs the action within an explicit write transaction, which is committed at the end. This is useful to 
+	 * send multiple Cypher statements in a single transaction, which is much cheaper for the server than 
+	 * auto-committing each statement.</p>
+	 * 
+	 * <p>The transaction is wrapped in a session via {@link #runSession(Function)}, so the whole transaction 
+	 * is re-attempted in case of errors like deadlocks. The commit times are recorded in 
+	 * {@link #getCommitsCount()} and alike.</p>
+	 */
+	public <V> V runTransaction ( Function<Transaction, V> action )
+	{
+		return runSession ( session -> 
+		{
+			try ( Transaction tx = session.beginTransaction ( getTransactionConfig () ) )
+			{
+				V result = action.apply ( tx );
+				
+				long start = System.nanoTime ();
+				tx.commit ();
+				recordCommitTime ( System.nanoTime () - start );
+				
+				return result;
+			}
+		});
+	}
+	
+	private void recordCommitTime ( long time )
+	{
+		commitsCount.increment ();
+		commitsTime.add ( time );
+		maxCommitTime.accumulate ( time );
+	}
+	
+	/**
+	 * <p>Runs a list of UNWIND-based statements in a single transaction, via {@link #runTransaction(Function)}. Each 
+	 * statement comes with the rows it has to unwind, which are passed to it via the paramName parameter.</p>
+	 * 
+	 * <p>If {@link #getRejectsPath()} is set and the transaction fails due to a {@link RetryPolicy#isDataError(Throwable) 
+	 * data error}, the statements are re-run separately and the rows of a failing statement are bisected, ie, split 
+	 * in two halves, each sent in its own transaction and bisected again if it fails. This goes on until the
+	 * offending rows are isolated, which are then written to the rejects file, while all the other rows are 
+	 * committed. This costs a no. of extra transactions that is logarithmic with the size of the rows 
+	 * list, for each bad row.</p> 
+	 */
+	public void runUnwindTransaction ( String paramName, List<Entry<String, List<?>>> statements )
+	{
+		runUnwindTransaction ( paramName, statements, null );
+	}
+	
+	/**
+	 * If resultHandler isn't null, it receives the records returned by the statements (eg, the IDs of created 
+	 * nodes), after the transaction they come from is committed. The records are kept in memory until then.
+	 */
+	public void runUnwindTransaction ( 
+		String paramName, List<Entry<String, List<?>>> statements, Consumer<Record> resultHandler 
+	)
+	{
+		List<Record> records;
+		try {
+			records = runTransaction ( tx -> runUnwindStatements ( tx, paramName, statements, resultHandler != null ) );
+		}
+		catch ( RuntimeException ex ) 
+		{
+			if ( rejectsPath == null || !retryPolicy.isDataError ( ex ) ) throw ex;
+			bisectStatements ( paramName, statements, resultHandler, ex );
+			return;
+		}
+		if ( resultHandler != null ) records.forEach ( resultHandler );
+	}
+	
+	private static List<Record> runUnwindStatements ( 
+		Transaction tx, String paramName, List<Entry<String, List<?>>> statements, boolean fetchRecords 
+	)
+	{
+		List<Record> result = fetchRecords ? new ArrayList<> () : List.of ();
+		for ( Entry<String, List<?>> stmt: statements )
+		{
+			Result cursor = tx.run ( stmt.getKey (), parameters ( paramName, stmt.getValue () ) );
+			if ( fetchRecords ) cursor.forEachRemaining ( result::add ); 
+			else cursor.consume ();
+		}
+		return result;
+	}
+
+	/**
+	 * The asynchronous version of {@link #runUnwindTransaction(String, List)}. The statements are sent via 
+	 * {@link #runTransactionAsync(Function)}. In case of data errors, the bisection runs synchronously, in a 
+	 * separate thread, which still holds the async transaction permit, and it is waited by 
+	 * {@link #awaitAsyncWrites()}.
+	 */
+	public void runUnwindTransactionAsync ( String paramName, List<Entry<String, List<?>>> statements )
+	{
+		runUnwindTransactionAsync ( paramName, statements, null );
+	}
+
+	/**
+	 * The asynchronous version of {@link #runUnwindTransaction(String, List, Consumer)}. The resultHandler is 
+	 * invoked by the driver threads, so it must not block.
+	 */
+	public void runUnwindTransactionAsync ( 
+		String paramName, List<Entry<String, List<?>>> statements, Consumer<Record> resultHandler 
+	)
+	{
+		runTransactionAsync ( 
+			tx -> 
+			{
+				// The statements are chained, so this is accessed by one thread at a time
+				List<Record> records = new ArrayList<> ();
+				CompletionStage<?> result = CompletableFuture.completedFuture ( null );
+				for ( Entry<String, List<?>> stmt: statements )
+					result = result.thenCompose ( 
+						r -> tx.runAsync ( stmt.getKey (), parameters ( paramName, stmt.getValue () ) )
+						.thenCompose ( cursor -> resultHandler == null 
+							? cursor.consumeAsync () 
+							: cursor.forEachAsync ( records::add ) 
+						)
+					);
+				return result.thenApply ( r -> records );
+			},
+			resultHandler == null ? null : records -> records.forEach ( resultHandler ),
+			rejectsPath == null ? null : ex -> bisectStatements ( paramName, statements, resultHandler, ex )
+		);
+	}
+	
+	private void bisectStatements ( 
+		String paramName, List<Entry<String, List<?>>> statements, Consumer<Record> resultHandler, Throwable ex 
+	)
+	{
+		log.warn ( 
+			"Data error from a Neo4j transaction, bisecting its rows to find the offending ones. Error: {}", 
+			ex.getMessage ()
+		);
+		if ( statements.size () == 1 ) {
+			Entry<String, List<?>> stmt = statements.get ( 0 );
+			bisectRows ( stmt.getKey (), paramName, stmt.getValue (), resultHandler, ex );
+			return;
+		}
+		for ( Entry<String, List<?>> stmt: statements )
+			runUnwindRows ( stmt.getKey (), paramName, stmt.getValue (), resultHandler );
+	}
+	
+	private void runUnwindRows ( String cypher, String paramName, List<?> rows, Consumer<Record> resultHandler )
+	{
+		List<Record> records;
+		try {
+			records = runTransaction ( 
+				tx -> runUnwindStatements ( tx, paramName, List.of ( Map.entry ( cypher, rows ) ), resultHandler != null ) 
+			);
+		}
+		catch ( RuntimeException ex ) 
+		{
+			if ( !retryPolicy.isDataError ( ex ) ) throw ex;
+			bisectRows ( cypher, paramName, rows, resultHandler, ex );
+			return;
+		}
+		if ( resultHandler != null ) records.forEach ( resultHandler );
+	}
+
+	/**
+	 * Splits rows that failed with ex and re-runs the halves via {@link #runUnwindRows(String, String, List, Consumer)}, 
+	 * which recurses here if needed.
+	 */
+	private void bisectRows ( 
+		String cypher, String paramName, List<?> rows, Consumer<Record> resultHandler, Throwable ex 
+	)
+	{
+		if ( rows.size () == 1 ) {
+			rejectRow ( cypher, rows.get ( 0 ), ex );
+			return;
+		}
+		int mid = rows.size () / 2;
+		runUnwindRows ( cypher, paramName, rows.subList ( 0, mid ), resultHandler );
+		runUnwindRows ( cypher, paramName, rows.subList ( mid, rows.size () ), resultHandler );
+	}
+	
+	/**
+	 * Writes a row to {@link #getRejectsPath()}, as a tab-separated line of: error code, error message, 
+	 * Cypher statement, row.
+	 */
+	private void rejectRow ( String cypher, Object row, Throwable ex )
+	{
+		String code = ex instanceof Neo4jException ? ( (Neo4jException) ex ).code () : ex.getClass ().getName ();
+		String line = String.join ( "\t", 
+			oneLine ( code ), oneLine ( ex.getMessage () ), oneLine ( cypher ), oneLine ( String.valueOf ( row ) ) 
+		) + "\n";
+		
+		synchronized ( this ) 
+		{
+			try {
+				Files.writeString ( 
+					rejectsPath, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND 
+				);
+			}
+			catch ( IOException ioex ) {
+				throw new GenericNeo4jException ( String.format ( 
+					"Error while writing the Neo4j rejected row to \"%s\": %s", rejectsPath, ioex.getMessage () 
+				), ioex );
+			}
+		}
+		rejectedRowsCount.increment ();
+		log.warn ( "Neo4j row rejected and sent to \"{}\", error: {}", rejectsPath, ex.getMessage () );
+	}
+	
+	private static String oneLine ( String s )
+	{
+		if ( s == null ) return "";
+		return s.replace ( '\t', ' ' ).replace ( '\n', ' ' ).replace ( '\r', ' ' );
+	}
+	
+	/**
+	 * <p>An asynchronous version of {@link #runCypher(String, Object...)}, based on the driver's async API: the 
+	 * command is sent in a write transaction and this method returns without waiting for it to complete, so 
+	 * that the caller can go ahead with other work (eg, preparing the next batch of data).</p>
+	 * 
+	 * <p>At most {@link #getMaxAsyncTransactions()} transactions can be pending at the same time, further
+	 * invocations wait for a pending one to complete. Transient errors (eg, deadlocks) are retried by the 
+	 * driver, within its max transaction retry time, and then re-attempted as decided by {@link #getRetryPolicy()}, 
+	 * up to {@link #getMaxRetries()} times, as in the synchronous methods. Other errors are reported by the next 
+	 * invocation of this method or by {@link #awaitAsyncWrites()}, which must be invoked to be sure the writes 
+	 * are done.</p>
+	 * 
+	 * <p>This is affected by {@link #getMaxSessions()} too.</p>
+	 */
+	public void runCypherAsync ( String cypher, Object... keyVals )
+	{
+		if ( log.isTraceEnabled () )
+			log.trace ( "Async Cypher: {} params: {}", cypher, ArrayUtils.toString ( keyVals ) );
+		
+		runTransactionAsync ( 
+			tx -> tx.runAsync ( cypher, parameters ( keyVals ) ).thenCompose ( ResultCursor::consumeAsync ) 
+		);
+	}
+	
+	/**
+	 * The generic version of {@link #runCypherAsync(String, Object...)}: the work is run within an async write
+	 * transaction, which is committed when the stage it returns is completed. The same limits and error 
+	 * reporting apply.
+	 */
+	public void runTransactionAsync ( Function<AsyncTransaction, CompletionStage<?>> work )
+	{
+		runTransactionAsync ( tx -> work.apply ( tx ).thenApply ( r -> null ), null, null );
+	}
+	
+	/**
+	 * If not null, resultHandler receives the result of the work after the commit. If the work fails with a 
+	 * {@link RetryPolicy#isDataError(Throwable) data error} and dataErrorHandler isn't null, the latter is run 
+	 * synchronously in {@link #getDataErrorExecutor() a separate thread}, instead of reporting the error. 
+	 * 
+	 * The async permit is held until everything is done, including the re-attempts and the data error handler,
+	 * so that the latter counts in {@link #getMaxAsyncTransactions()}. The session permit is released before 
+	 * the data error handler, since this opens its own sessions.
+	 */
+	private <T> void runTransactionAsync ( 
+		Function<AsyncTransaction, CompletionStage<T>> work, Consumer<T> resultHandler, 
+		Consumer<Throwable> dataErrorHandler 
+	)
+	{
+		checkAsyncWriteError ();
+		
+		Semaphore asyncPermits = this.asyncPermits, sessionPermits = this.sessionPermits;
+		acquireAsync ( asyncPermits );
+		try {
+			acquireSession ( sessionPermits );
+		}
+		catch ( RuntimeException ex ) {
+			if ( asyncPermits != null ) asyncPermits.release ();
+			throw ex;
+		}
+
+		CompletableFuture<Void> result = new CompletableFuture<> ();
+		pendingAsyncWrites.add ( result );
+		
+		attemptTransactionAsync ( work, 1 )
+		.thenAccept ( r -> { if ( resultHandler != null ) resultHandler.accept ( r ); } )
+		.whenComplete ( ( v, ex ) -> 
+		{
+			if ( sessionPermits != null ) sessionPermits.release ();
+			
+			if ( ex instanceof CompletionException && ex.getCause () != null ) ex = ex.getCause ();
+			
+			if ( ex != null && dataErrorHandler != null && retryPolicy.isDataError ( ex ) )
+			{
+				// It's blocking, so it can't run in the driver threads
+				Throwable dataEx = ex;
+				CompletableFuture.runAsync ( () -> dataErrorHandler.accept ( dataEx ), getDataErrorExecutor () )
+				.whenComplete ( ( v1, handlerEx ) -> 
+				{
+					if ( asyncPermits != null ) asyncPermits.release ();
+					completeAsyncWrite ( result, handlerEx );
+				});
+				return;
+			}
+			
+			if ( asyncPermits != null ) asyncPermits.release ();
+			completeAsyncWrite ( result, ex );
+		});
+	}
+	
+	/**
+	 * Runs the work in a new async session and, as {@link #runSession(Function)} does, re-attempts it after errors 
+	 * that {@link #getRetryPolicy()} considers worth it, up to {@link #getMaxRetries()}. The pauses between 
+	 * the attempts don't block any thread.
+	 */
+	private <T> CompletableFuture<T> attemptTransactionAsync ( 
+		Function<AsyncTransaction, CompletionStage<T>> work, int attempt 
+	)
+	{
+		CompletableFuture<T> result = new CompletableFuture<> ();
+		
+		AsyncSession session = this.neo4jDriver.asyncSession ();
+		long start = System.nanoTime ();
+		session.writeTransactionAsync ( tx -> work.apply ( tx ), getTransactionConfig () )
+		.handle ( ( r, ex ) -> 
+		{
+			// The driver commits on its own, so we can only time the whole transaction
+			if ( ex == null ) recordCommitTime ( System.nanoTime () - start );
+			return session.closeAsync ().handle ( ( v, closeEx ) -> 
+			{
+				Throwable error = ex == null ? closeEx : ex;
+				if ( error instanceof CompletionException && error.getCause () != null ) error = error.getCause ();
+				
+				if ( error == null ) {
+					result.complete ( r );
+					return null;
+				}
+				
+				long pause = attempt < maxRetries ? retryPolicy.getRetryPause ( error, attempt ) : -1;
+				if ( pause < 0 ) {
+					result.completeExceptionally ( error );
+					return null;
+				}
+				
+				attemptLog.log ( attemptMsgLogLevel, 
+					"Neo4j async attempt {}/{} failed with \"{}\", retrying in {} ms", 
+					attempt, maxRetries, error.getMessage (), pause
+				);
+				CompletableFuture.runAsync ( () -> {}, CompletableFuture.delayedExecutor ( pause, TimeUnit.MILLISECONDS ) )
+				.thenCompose ( v1 -> attemptTransactionAsync ( work, attempt + 1 ) )
+				.whenComplete ( ( r1, ex1 ) -> {
+					if ( ex1 == null ) result.complete ( r1 );
+					else result.completeExceptionally ( ex1 );
+				});
+				return null;
+			});
+		})
+		.exceptionally ( ex -> {
+			// Unexpected errors from the handlers above 
+			result.completeExceptionally ( ex );
+			return null;
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * The executor for the data error handlers of the async transactions (ie, the bisection of the rows), which 
+	 * are blocking. We don't use the common fork/join pool, which isn't meant for blocking tasks, and it doesn't 
+	 * need a bound, since the handlers are limited by {@link #getMaxAsyncTransactions()}. The threads are daemons 
+	 * and the idle ones are disposed, so it doesn't need any shutdown.
+	 */
+	private synchronized ExecutorService getDataErrorExecutor ()
+	{
+		if ( dataErrorExecutor != null ) return dataErrorExecutor;
+		
+		AtomicInteger threadsCount = new AtomicInteger ();
+		return dataErrorExecutor = Executors.newCachedThreadPool ( r -> 
+		{
+			Thread thread = new Thread ( r, "neo4j-data-errors-" + threadsCount.incrementAndGet () );
+			thread.setDaemon ( true );
+			return thread;
+		});
+	}
+	
+	private void completeAsyncWrite ( CompletableFuture<Void> pendingWrite, Throwable ex )
+	{
+		if ( ex instanceof CompletionException && ex.getCause () != null ) ex = ex.getCause ();
+		if ( ex != null && asyncWriteError.compareAndSet ( null, ex ) ) log.error ( 
+			"Error while running asynchronous Cypher: {}", ex.getMessage (), ex 
+		);
+		pendingAsyncWrites.remove ( pendingWrite );
+		pendingWrite.complete ( null );
+	}
+	
+	/**
+	 * Waits for all the transactions sent by {@link #runTransactionAsync(Function)} to complete and 
+	 * re-throws the first error they had, if any. This resets the error state.
+	 */
+	public void awaitAsyncWrites ()
+	{
+		for ( CompletableFuture<Void> pending: Set.copyOf ( pendingAsyncWrites ) )
+			pending.join ();
+		try {
+			checkAsyncWriteError ();
+		}
+		finally {
+			asyncWriteError.set ( null );
+		}
 	}
 	
+	private void checkAsyncWriteError ()
+	{
+		Throwable ex = asyncWriteError.get ();
+		if ( ex == null ) return;
+		throw new GenericNeo4jException ( "Error from asynchronous Cypher: " + ex.getMessage (), ex );
+	}
 	
+	private void acquireAsync ( Semaphore permits )
+	{
+		if ( permits == null ) return;
+		try {
+			permits.acquire ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new GenericNeo4jException ( "Interrupted while waiting for an asynchronous Neo4j transaction", ex );
+		}
+	}
 	
 	
 	/**
@@ -122,7 +676,7 @@ public class Neo4jDataManager
 			log.trace ( "Cypher: {} params: {}", cypher, ArrayUtils.toString ( keyVals ) );
 		
 		this.runSessionVoid ( session -> {
-			Result cursor = session.run ( cypher, parameters ( keyVals ) );
+			Result cursor = session.run ( new Query ( cypher, parameters ( keyVals ) ), getTransactionConfig () );
 			cursor.forEachRemaining ( action );			
 		});
 	}
@@ -141,6 +695,25 @@ public class Neo4jDataManager
 	public void setNeo4jDriver ( Driver neo4jDriver )
 	{
 		this.neo4jDriver = neo4jDriver;
+		this.sessionPermits = getDriverPermits ( SESSION_PERMITS, neo4jDriver, maxSessions );
+		this.asyncPermits = getDriverPermits ( ASYNC_PERMITS, neo4jDriver, maxAsyncTransactions );
+	}
+	
+	/**
+	 * Gets the semaphore for the driver from the registry, creating a new one if there isn't any or if it was 
+	 * created for a different limit. 
+	 * 
+	 * @return null if max &lt;= 0 or there isn't any driver, meaning no limit.
+	 */
+	private static Semaphore getDriverPermits ( Map<Driver, DriverPermits> registry, Driver driver, int max )
+	{
+		if ( max <= 0 || driver == null ) return null;
+		synchronized ( registry )
+		{
+			DriverPermits result = registry.get ( driver );
+			if ( result == null || result.max != max ) registry.put ( driver, result = new DriverPermits ( max ) );
+			return result.semaphore;
+		}
 	}
 
 	/**
@@ -153,8 +726,7 @@ public class Neo4jDataManager
 	 * 
 	 * Default is 10, must be at least 1.
 	 * 
-	 * This bean property is a wrapper or {@link MultipleAttemptsExecutor#getMaxAttempts()}
-	 * 
+	 * @see #getRetryPolicy()
 	 * @see #getAttemptMsgLogLevel()
 	 * 
 	 */
@@ -175,8 +747,158 @@ public class Neo4jDataManager
 	}
 
 	/**
-	 * A delegate of {@link MultipleAttemptsExecutor#setAttemptMsgLogLevel(Level)}, allows for setting
-	 * the log level of the message notifying that {@link #runSession(Function)} is being re-attempted due to problems
+	 * If &gt; 0, the max number of Neo4j sessions that {@link #runSession(Function)} (and hence all the 
+	 * Cypher-running methods) can have open at the same time. Further invocations wait for a session to be 
+	 * closed. This allows for limiting the load on the Neo4j server independently of the number of client 
+	 * threads, which is useful when the latter is large (eg, with virtual threads).
+	 * 
+	 * The limit is per {@link #getNeo4jDriver() driver}, ie, it's shared by all the managers that use the same
+	 * driver instance and have the same setting.
+	 * 
+	 * Default is -1, ie, no limit. 
+	 */
+	public int getMaxSessions ()
+	{
+		return maxSessions;
+	}
+
+	/**
+	 * This isn't supposed to be changed while sessions are running.
+	 */
+	public void setMaxSessions ( int maxSessions )
+	{
+		this.maxSessions = maxSessions;
+		this.sessionPermits = getDriverPermits ( SESSION_PERMITS, neo4jDriver, maxSessions );
+	}
+
+	/**
+	 * Decides which errors {@link #runSession(Function)} re-attempts and how long it waits between attempts. It 
+	 * also tells which errors are data errors, see {@link #getRejectsPath()}.
+	 * 
+	 * Default is {@link ExponentialBackoffRetryPolicy} with its defaults.
+	 */
+	public RetryPolicy getRetryPolicy ()
+	{
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy ( RetryPolicy retryPolicy )
+	{
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * If &gt; 0, the timeout for the transactions sent by this manager, in ms, after which the server aborts them.
+	 * This prevents a stuck transaction from holding its locks (and the client thread) for an unbounded time.
+	 * Timed out transactions aren't re-attempted by the default {@link #getRetryPolicy() retry policy}.
+	 * 
+	 * Default is -1, ie, the server's default.
+	 */
+	public long getTxTimeout ()
+	{
+		return txTimeout;
+	}
+
+	public void setTxTimeout ( long txTimeout )
+	{
+		this.txTimeout = txTimeout;
+	}
+	
+	private TransactionConfig getTransactionConfig ()
+	{
+		if ( txTimeout <= 0 ) return TransactionConfig.empty ();
+		return TransactionConfig.builder ().withTimeout ( Duration.ofMillis ( txTimeout ) ).build ();
+	}
+
+	/**
+	 * If set, the file where {@link #runUnwindTransaction(String, List)} writes the rows that it can't write to
+	 * Neo4j due to data errors. The file is appended, one tab-separated line per row.
+	 * 
+	 * Default is null, meaning that data errors are reported as any other error, without any bisection. 
+	 */
+	public Path getRejectsPath ()
+	{
+		return rejectsPath;
+	}
+
+	public void setRejectsPath ( Path rejectsPath )
+	{
+		this.rejectsPath = rejectsPath;
+	}
+	
+	/**
+	 * The no. of rows written to {@link #getRejectsPath()} since the creation of this manager.
+	 */
+	public long getRejectedRowsCount ()
+	{
+		return rejectedRowsCount.sum ();
+	}
+
+	/**
+	 * The no. of transactions committed by {@link #runTransaction(Function)} or 
+	 * {@link #runTransactionAsync(Function)}, since the creation of this manager or the last 
+	 * {@link #resetCommitStats()}.
+	 * 
+	 * For the async transactions, the driver commits when the work is done, so the commit times are the whole
+	 * transaction times, from sending the transaction to its completion, which includes the time 
+	 * to run the statements and the time spent in the driver's queues.
+	 */
+	public long getCommitsCount ()
+	{
+		return commitsCount.sum ();
+	}
+
+	/**
+	 * The average commit time of the transactions counted by {@link #getCommitsCount()}, in ms.
+	 */
+	public double getAvgCommitTime ()
+	{
+		long n = commitsCount.sum ();
+		return n == 0 ? 0 : commitsTime.sum () / 1E6 / n;
+	}
+
+	/**
+	 * The max commit time of the transactions counted by {@link #getCommitsCount()}, in ms.
+	 */
+	public double getMaxCommitTime ()
+	{
+		return maxCommitTime.get () / 1E6;
+	}
+	
+	public void resetCommitStats ()
+	{
+		commitsCount.reset ();
+		commitsTime.reset ();
+		maxCommitTime.reset ();
+	}
+	
+	/**
+	 * The max no. of transactions that {@link #runCypherAsync(String, Object...)} can have pending (ie, sent to 
+	 * the server and not completed yet). As for {@link #getMaxSessions()}, the limit is per driver. Default is the 
+	 * no. of available processors, ie, the default no. of threads of the loading processors, which are the 
+	 * usual clients of the async writes.
+	 */
+	public int getMaxAsyncTransactions ()
+	{
+		return maxAsyncTransactions;
+	}
+
+	/**
+	 * This isn't supposed to be changed while async transactions are running.
+	 * 
+	 * @throws IllegalArgumentException if it's &lt;1
+	 */
+	public void setMaxAsyncTransactions ( int maxAsyncTransactions )
+	{
+		if ( maxAsyncTransactions < 1 ) throw new IllegalArgumentException ( 
+			"maxAsyncTransactions property for Neo4jDataManager must be 1 at least" 
+		);
+		this.maxAsyncTransactions = maxAsyncTransactions;
+		this.asyncPermits = getDriverPermits ( ASYNC_PERMITS, neo4jDriver, maxAsyncTransactions );
+	}
+
+	/**
+	 * Allows for setting the log level of the message notifying that {@link #runSession(Function)} is being re-attempted due to problems
 	 * like deadlocked transactions.
 	 * 
 	 * The default is {@link Level#DEBUG}.
@@ -0,0 +1,30 @@
+package uk.ac.rothamsted.neo4j.utils;
+
+/**
+ * Decides how {@link Neo4jDataManager} deals with errors from Neo4j.
+ *
+ * <p>Transient errors (eg, deadlocks, a cluster leader switch) are worth re-attempting the failed work after
+ * some pause, while data errors (eg, a property value of the wrong type) are caused by specific rows in a
+ * batch and the data manager can isolate them, see {@link Neo4jDataManager#getRejectsPath()}. Everything else
+ * is reported to the caller straight away.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public interface RetryPolicy
+{
+	/**
+	 * @param ex the error raised by the last attempt
+	 * @param attempt the no. of the failed attempt, starting from 1
+	 * @return how long to wait before the next attempt, in ms, or a negative value if the error isn't
+	 *         worth another attempt
+	 */
+	long getRetryPause ( Throwable ex, int attempt );
+
+	/**
+	 * Tells if the error is due to the data sent with the Cypher statement, rather than the statement itself
+	 * or the server.
+	 */
+	boolean isDataError ( Throwable ex );
+}
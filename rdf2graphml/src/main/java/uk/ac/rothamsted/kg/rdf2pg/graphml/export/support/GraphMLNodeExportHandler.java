@@ -44,12 +44,10 @@ public class GraphMLNodeExportHandler extends PGNodeHandler
 		this.renameThread ( "graphmlNodeX:" );
 		log.trace ( "Begin graphML export of {} node(s)", nodeResources.size () );
 					
-		var rdfMgr = this.getRdfDataManager ();
 		String defaultLabel = graphmlDataMgr.getDefaultLabel ();
 
-		for ( Resource nodeRes: nodeResources )
+		for ( PGNode pgNode: this.getPGNodes ( nodeResources ) )
 		{
-			PGNode pgNode = rdfMgr.getPGNode ( nodeRes, this.getLabelsSparql (), this.getNodePropsSparql () );
 			Map<String, Object> nodeProps = graphmlDataMgr.flatPGProperties ( pgNode );
 					
 			SortedSet<String> labels = new TreeSet<> ( pgNode.getLabels () );
@@ -20,7 +20,6 @@ import org.springframework.stereotype.Component;
 
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGRelationHandler;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
-import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 
 /**
  * Similarly to {@link GraphMLNodeExportHandler}, this is used to {@link GraphMLRelationExportProcessor} to process
@@ -53,12 +52,8 @@ public class GraphMLRelationExportHandler extends PGRelationHandler
 		this.renameThread ( "graphmlRelX:" );
 		log.trace ( "Begin of {} relations", relRecords.size () );
 		
-		RdfDataManager rdfMgr = this.getRdfDataManager ();
-		for ( QuerySolution row : relRecords )
+		for ( PGRelation cyRelation : this.getPGRelations ( relRecords ) )
 		{			
-			PGRelation cyRelation = rdfMgr.getPGRelation ( row );
-			rdfMgr.setPGRelationProps ( cyRelation, this.getRelationPropsSparql () );
-
 			String type = cyRelation.getType ();
 
 			Map<String, Object> relParams = graphmlDataMgr.flatPGProperties ( cyRelation );
@@ -1,6 +1,16 @@
 package uk.ac.rothamsted.kg.rdf2pg.graphml.export;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -114,5 +124,66 @@ public class GraphMLExportTest
 			// TODO: test
 		}
 	}	
+
+	
+	/**
+	 * The ways {@link #testSpringMultiConfigParallel()} runs the export.
+	 */
+	private enum ExportMode
+	{
+		SEQUENTIAL, PARALLEL, DEPENDENCIES;
+		
+		String getOutPath () {
+			return "target/test-mconfig-exporter-" + name ().toLowerCase () + ".graphml";
+		}
+	}
+	
+	/**
+	 * Tests {@link MultiConfigPGMaker#getConfigItemsParallelism()}, by comparing the result with the sequential
+	 * export.
+	 */
+	@Test
+	public void testSpringMultiConfigParallel () throws IOException
+	{
+		for ( var mode: ExportMode.values () )
+			try ( 
+				ConfigurableApplicationContext beanCtx = new ClassPathXmlApplicationContext ( "multi_config.xml" );
+				MultiConfigGraphMLExporter mmaker = MultiConfigGraphMLExporter.getSpringInstance ( beanCtx, MultiConfigGraphMLExporter.class );				
+			)
+			{
+				if ( mode != ExportMode.SEQUENTIAL ) mmaker.setConfigItemsParallelism ( 2 );
+				if ( mode == ExportMode.DEPENDENCIES ) 
+					// Just to exercise the scheduling, the GraphML export doesn't actually need the nodes first
+					for ( var cfg: mmaker.getConfigItems () )
+						cfg.setRelationDependencies ( "people".equals ( cfg.getName () ) ? List.of ( "places" ) : List.of () );
+				
+				mmaker.make ( DataTestUtils.TDB_PATH, mode.getOutPath () );
+			}
+		
+		// The order is different, but the elements should be the same
+		Set<String> seqLines = new HashSet<> ( Files.readAllLines ( Path.of ( ExportMode.SEQUENTIAL.getOutPath () ) ) );
+		
+		for ( var mode: List.of ( ExportMode.PARALLEL, ExportMode.DEPENDENCIES ) )
+		{
+			Set<String> parLines = new HashSet<> ( Files.readAllLines ( Path.of ( mode.getOutPath () ) ) );
+			assertTrue ( "Parallel export has no nodes (" + mode + ")!", parLines.stream ().anyMatch ( l -> l.startsWith ( "<node " ) ) );
+			assertEquals ( "Parallel export differs from the sequential one (" + mode + ")!", seqLines, parLines );
+		}
+	}
+	
+	
+	@Test ( expected = IllegalArgumentException.class )
+	public void testWrongRelationDependencies ()
+	{
+		try ( 
+			ConfigurableApplicationContext beanCtx = new ClassPathXmlApplicationContext ( "multi_config.xml" );
+			MultiConfigGraphMLExporter mmaker = MultiConfigGraphMLExporter.getSpringInstance ( beanCtx, MultiConfigGraphMLExporter.class );				
+		)
+		{
+			mmaker.setConfigItemsParallelism ( 2 );
+			mmaker.getConfigItems ().get ( 0 ).setRelationDependencies ( List.of ( "foo" ) );
+			mmaker.make ( DataTestUtils.TDB_PATH, "target/test-mconfig-exporter-wrong-deps.graphml" );
+		}
+	}
 	
 }
@@ -3,8 +3,11 @@ package uk.ac.rothamsted.kg.rdf2pg.neo4j.cli;
 import org.springframework.stereotype.Component;
 
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import uk.ac.rothamsted.kg.rdf2pg.cli.Rdf2PgCommand;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.MultiConfigNeo4jCsvExporter;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.MultiConfigNeo4jLoader;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
 
 
 /**
@@ -22,6 +25,21 @@ import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.MultiConfigNeo4jLoader;
 )	
 public class Rdf2NeoCommand extends Rdf2PgCommand<MultiConfigNeo4jLoader>
 {
+	@Option ( 
+		names = { "-u", "--upsert" }, 
+		description = "Uses MERGE instead of CREATE, so that existing nodes/relations are updated, "
+			+ "rather than duplicated (slower, see the documentation)."
+	)
+	private boolean upsertMode = false;
+
+	@Option ( 
+		names = { "-x", "--csv-export" },
+		paramLabel = "<dir>",
+		description = "Doesn't load Neo4j, writes CSV files for neo4j-admin import into <dir> instead "
+			+ "(see neo4j-admin-import.args in there). This is usually much faster for initial loads."
+	)
+	private String csvOutPath = null;
+	
 	public Rdf2NeoCommand ()
 	{
 		super ( MultiConfigNeo4jLoader.class );
@@ -30,10 +48,26 @@ public class Rdf2NeoCommand extends Rdf2PgCommand<MultiConfigNeo4jLoader>
 	@Override
 	public int makePropertyGraph ()
 	{
-		try ( var cyloader = this.getMakerFromSpringConfig () ) {
+		if ( csvOutPath != null ) return exportCsv ();
+		
+		try ( var cyloader = this.getMakerFromSpringConfig () ) 
+		{
+			if ( upsertMode ) cyloader.setUpsertMode ( true );
 			cyloader.load ( tdbPath );
 		}
 		log.info ( "The end" );
 		return 0;
 	}
+	
+	private int exportCsv ()
+	{
+		if ( upsertMode ) log.warn ( "Upsert mode ignored with CSV export" );
+		
+		try ( var csvExporter = MultiConfigPGMaker.getSpringInstance ( xmlConfigPath, MultiConfigNeo4jCsvExporter.class ) ) 
+		{
+			csvExporter.export ( tdbPath, csvOutPath );
+		}
+		log.info ( "The end" );
+		return 0;
+	}
 }
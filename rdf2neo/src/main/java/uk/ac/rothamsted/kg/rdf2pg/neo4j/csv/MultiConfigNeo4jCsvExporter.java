@@ -0,0 +1,87 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.Neo4jCsvDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.MultiConfigNeo4jLoader;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.Neo4jConfigItem;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
+
+/**
+ * <h1>The multi-config neo4j-admin CSV exporter</h1>
+ * 
+ * <p>An alternative to {@link MultiConfigNeo4jLoader}, which writes the mapped property graph into CSV files 
+ * for the <code>neo4j-admin database import</code> tool, instead of loading it into a running Neo4j. This is
+ * usually much faster for initial loads of big datasets, see {@link Neo4jCsvDataManager} for details on the 
+ * output.</p>
+ * 
+ * <p>The same Spring configuration files used for {@link MultiConfigNeo4jLoader} can be used here, since the 
+ * {@link Neo4jConfigItem} beans are picked too and converted. Their indexing queries are ignored, since 
+ * neo4j-admin doesn't create indexes, you should create them after the import.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component
+public class MultiConfigNeo4jCsvExporter 
+	extends MultiConfigPGMaker<ConfigItem<SimpleNeo4jCsvExporter>, SimpleNeo4jCsvExporter>
+{
+	@Autowired
+	private Neo4jCsvDataManager csvDataMgr;
+	
+	/**
+	 * Just a wrapper of {@link #make(String, Object...)}.
+	 */
+	public void export ( String tdbPath, String outDirPath )
+	{
+		this.make ( tdbPath, outDirPath );
+	}
+
+	@Override
+	protected void makeBegin ( String tdbPath, Object... opts )
+	{
+		super.makeBegin ( tdbPath, opts );
+		
+		if ( opts == null || opts.length != 1 ) throw new IllegalArgumentException ( String.format (
+			"%s needs the output directory parameter", this.getClass ().getSimpleName ()
+		));
+		
+		String outPath = (String) opts [ 0 ];
+		this.csvDataMgr.setOutputDir ( outPath );
+	}
+
+	/**
+	 * Skips the mode == 2 (indexing) that {@link MultiConfigPGMaker} uses for the loaders.  
+	 */
+	@Override
+	protected void makeIteration ( int mode, ConfigItem<SimpleNeo4jCsvExporter> cfg, String tdbPath, Object... opts )
+	{
+		if ( mode > 1 ) return;
+		super.makeIteration ( mode, cfg, tdbPath, opts );
+	}
+
+	@Override
+	protected void makeEnd ( String tdbPath, Object... opts )
+	{
+		csvDataMgr.finish ();
+	}
+	
+	/**
+	 * Allows for reusing the rdf2neo configurations, see above.
+	 */
+	@Autowired ( required = false )
+	public void setNeo4jConfigItems ( List<Neo4jConfigItem> neoConfigItems )
+	{
+		List<ConfigItem<SimpleNeo4jCsvExporter>> cfgItems = neoConfigItems
+			.stream ()
+			.map ( ConfigItem<SimpleNeo4jCsvExporter>::new )
+			.collect ( Collectors.toList () );
+		this.setConfigItems ( cfgItems );
+	}
+}
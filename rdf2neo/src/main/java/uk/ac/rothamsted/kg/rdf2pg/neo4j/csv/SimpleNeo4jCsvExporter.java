@@ -0,0 +1,28 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.CsvNodeExportHandler;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.CsvNodeExportProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.CsvRelationExportHandler;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.CsvRelationExportProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.SimplePGMaker;
+
+/**
+ * <h1>The Simple neo4j-admin CSV Exporter</h1>
+ * 
+ * This is just a wrapper of {@link SimplePGMaker} which wires together the right generics and defines the
+ * right Spring annotations.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component @Scope ( scopeName = "pgmakerSession" )
+public class SimpleNeo4jCsvExporter
+  extends SimplePGMaker <CsvNodeExportHandler, CsvRelationExportHandler, 
+  												CsvNodeExportProcessor, CsvRelationExportProcessor>
+{
+	// As said above, nothing special is needed
+}
@@ -0,0 +1,21 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.spring;
+
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.SimpleNeo4jCsvExporter;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.spring.SimplePGMakerFactory;
+
+/**
+ * A simple extension of {@link SimplePGMakerFactory} that just binds to {@link SimpleNeo4jCsvExporter}. 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component
+public class SimpleNeo4jCsvExporterFactory extends SimplePGMakerFactory<SimpleNeo4jCsvExporter>
+{
+	public SimpleNeo4jCsvExporterFactory () {
+		super ( SimpleNeo4jCsvExporter.class );
+	}
+}
@@ -0,0 +1,289 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support;
+
+import static uk.ac.ebi.utils.exceptions.ExceptionUtils.buildEx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the neo4j-admin import CSV files for a group of homogeneous entities, ie, nodes having the same label set,
+ * or relations having the same type.
+ *
+ * <p>Since we stream the entities and we can't know all the properties in advance, the output is organised in
+ * <em>parts</em>, each having its own header file and data file. A new part is started every time an entity
+ * comes with a new property, or with a value that doesn't fit the type of an existing column (eg, a string for
+ * a long column, or multiple values for a single-value column). Columns are only added or widened, so that the
+ * parts are usually few and the memory used here doesn't depend on the data size.</p>
+ *
+ * <p>The current data file can be {@link #closeOutput() closed} between writes, to limit the no. of open files
+ * (see {@link Neo4jCsvDataManager#getMaxOpenFiles()}), in which case it's reopened in append mode by the next
+ * write.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+class CsvGroupWriter
+{
+	private final Path outDir;
+	private final String filePrefix;
+	private final List<String> fixedHeaders;
+	private final char arrayDelimiter;
+
+	/** Property name -> neo4j-admin type */
+	private Map<String, String> columns = new LinkedHashMap<> ();
+	private Writer out = null;
+	private int partIdx = -1;
+	private List<Path[]> parts = new ArrayList<> ();
+	private long rowsCount = 0;
+	private boolean isDelimiterClashReported = false;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param filePrefix used to build file names like &lt;prefix&gt;_&lt;part&gt;.csv and
+	 *        &lt;prefix&gt;_&lt;part&gt;_header.csv
+	 * @param fixedHeaders the non-property headers, which come first, eg, <code>iri:ID(iri)</code>, <code>:LABEL</code>.
+	 *
+	 */
+	CsvGroupWriter ( Path outDir, String filePrefix, char arrayDelimiter, String... fixedHeaders )
+	{
+		this.outDir = outDir;
+		this.filePrefix = filePrefix;
+		this.arrayDelimiter = arrayDelimiter;
+		this.fixedHeaders = List.of ( fixedHeaders );
+	}
+
+	/**
+	 * Writes a row. fixedValues are the values for the fixed headers, in the same order.
+	 */
+	synchronized void write ( List<String> fixedValues, Map<String, Object> props )
+	{
+		try
+		{
+			if ( needsNewPart ( props ) ) newPart ();
+			else if ( out == null ) reopenPart ();
+
+			var sb = new StringBuilder ();
+			for ( String v: fixedValues )
+			{
+				if ( sb.length () > 0 ) sb.append ( ',' );
+				if ( v != null ) appendQuoted ( v, sb );
+			}
+			for ( String col: columns.keySet () )
+			{
+				sb.append ( ',' );
+				Object v = props.get ( col );
+				if ( v == null ) continue;
+				appendQuoted ( formatValue ( v ), sb );
+			}
+			sb.append ( '\n' );
+			out.write ( sb.toString () );
+			rowsCount++;
+		}
+		catch ( IOException ex ) {
+			throw buildEx ( UncheckedIOException.class, ex,
+				"Error while writing the CSV file for '%s': %s", filePrefix, ex.getMessage ()
+			);
+		}
+	}
+
+	/**
+	 * Closes the current data file, if it's open. This doesn't finish the writer, the next {@link #write(List, Map)}
+	 * reopens the file.
+	 */
+	synchronized void closeOutput ()
+	{
+		try {
+			if ( out != null ) out.close ();
+			out = null;
+		}
+		catch ( IOException ex ) {
+			throw buildEx ( UncheckedIOException.class, ex,
+				"Error while closing the CSV file for '%s': %s", filePrefix, ex.getMessage ()
+			);
+		}
+	}
+	
+	/**
+	 * Closes the current output and returns the (header, data) path pairs that were written.
+	 */
+	synchronized List<Path[]> finish ()
+	{
+		closeOutput ();
+		log.debug ( "'{}': {} row(s) written into {} part(s)", filePrefix, rowsCount, parts.size () );
+		return parts;
+	}
+
+
+	/**
+	 * Widens {@link #columns} to accommodate the properties and tells if that was needed.
+	 */
+	private boolean needsNewPart ( Map<String, Object> props )
+	{
+		boolean result = partIdx < 0;
+		for ( var prop: props.entrySet () )
+		{
+			Object v = prop.getValue ();
+			if ( v == null ) continue;
+
+			String name = prop.getKey (), newType = csvType ( v );
+			String colType = columns.get ( name );
+			if ( colType == null ) {
+				columns.put ( name, newType );
+				result = true;
+				continue;
+			}
+			if ( isCompatible ( colType, newType ) ) continue;
+			columns.put ( name, widenType ( colType, newType ) );
+			result = true;
+		}
+		return result;
+	}
+
+	private void newPart () throws IOException
+	{
+		if ( out != null ) out.close ();
+		partIdx++;
+
+		Path headerPath = outDir.resolve ( filePrefix + "_" + partIdx + "_header.csv" );
+		Path dataPath = outDir.resolve ( filePrefix + "_" + partIdx + ".csv" );
+
+		var sb = new StringBuilder ( String.join ( ",", fixedHeaders ) );
+		columns.forEach ( (name, type) ->
+		{
+			sb.append ( ',' );
+			appendQuoted ( name + ":" + type, sb );
+		});
+		sb.append ( '\n' );
+		Files.writeString ( headerPath, sb.toString (), StandardCharsets.UTF_8 );
+
+		out = Files.newBufferedWriter ( dataPath, StandardCharsets.UTF_8 );
+		parts.add ( new Path[] { headerPath, dataPath } );
+
+		if ( partIdx > 0 ) log.debug ( "'{}': new CSV part #{} for columns {}", filePrefix, partIdx, columns );
+	}
+
+
+	private void reopenPart () throws IOException
+	{
+		Path dataPath = parts.get ( partIdx ) [ 1 ];
+		out = Files.newBufferedWriter ( dataPath, StandardCharsets.UTF_8, StandardOpenOption.APPEND );
+	}
+	
+
+	/**
+	 * Formats a value. For arrays, neo4j-admin doesn't support any escaping of the array delimiter, so, if an 
+	 * element contains it, we replace it with a space, reporting that in the log. 
+	 */
+	private String formatValue ( Object v )
+	{
+		if ( !( v instanceof Object[] ) ) return String.valueOf ( v );
+
+		var sb = new StringBuilder ();
+		for ( Object elem: (Object[]) v )
+		{
+			if ( sb.length () > 0 ) sb.append ( arrayDelimiter );
+			
+			String elemStr = String.valueOf ( elem );
+			if ( elemStr.indexOf ( arrayDelimiter ) != -1 ) 
+			{
+				if ( !isDelimiterClashReported ) log.warn ( 
+					"'{}': array value \"{}\" contains the array delimiter, which is replaced by a space (further " 
+					+ "cases are not reported), consider a different delimiter", filePrefix, elemStr 
+				);
+				isDelimiterClashReported = true;
+				elemStr = elemStr.replace ( arrayDelimiter, ' ' );
+			}
+			sb.append ( elemStr );
+		}
+		return sb.toString ();
+	}
+
+	private static void appendQuoted ( String s, StringBuilder sb )
+	{
+		sb.append ( '"' ).append ( s.replace ( "\"", "\"\"" ) ).append ( '"' );
+	}
+
+
+	/**
+	 * The neo4j-admin type for a property value.
+	 */
+	static String csvType ( Object v )
+	{
+		if ( !( v instanceof Object[] ) ) return scalarType ( v );
+
+		String result = null;
+		for ( Object elem: (Object[]) v )
+		{
+			String elemType = scalarType ( elem );
+			result = result == null || result.equals ( elemType ) ? elemType : widenScalar ( result, elemType );
+		}
+		return ( result == null ? "string" : result ) + "[]";
+	}
+
+	private static String scalarType ( Object v )
+	{
+		if ( v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte
+				 || v instanceof BigInteger ) return "long";
+		if ( v instanceof Double || v instanceof Float || v instanceof BigDecimal ) return "double";
+		if ( v instanceof Boolean ) return "boolean";
+		return "string";
+	}
+
+	/**
+	 * Tells if a value of valueType can be written into a column of colType.
+	 */
+	static boolean isCompatible ( String colType, String valueType )
+	{
+		if ( colType.equals ( valueType ) ) return true;
+
+		boolean isColArray = colType.endsWith ( "[]" ), isValueArray = valueType.endsWith ( "[]" );
+		if ( isValueArray && !isColArray ) return false;
+
+		String colBase = baseType ( colType ), valueBase = baseType ( valueType );
+		if ( colBase.equals ( valueBase ) ) return true; // single value into an array
+		if ( "string".equals ( colBase ) ) return true;
+		return "double".equals ( colBase ) && "long".equals ( valueBase );
+	}
+
+	/**
+	 * The minimal type that is {@link #isCompatible(String, String) compatible} with both the parameters.
+	 */
+	static String widenType ( String t1, String t2 )
+	{
+		if ( isCompatible ( t1, t2 ) ) return t1;
+		if ( isCompatible ( t2, t1 ) ) return t2;
+
+		String result = widenScalar ( baseType ( t1 ), baseType ( t2 ) );
+		if ( t1.endsWith ( "[]" ) || t2.endsWith ( "[]" ) ) result += "[]";
+		return result;
+	}
+
+	private static String widenScalar ( String t1, String t2 )
+	{
+		if ( t1.equals ( t2 ) ) return t1;
+		boolean isNumeric1 = "long".equals ( t1 ) || "double".equals ( t1 );
+		boolean isNumeric2 = "long".equals ( t2 ) || "double".equals ( t2 );
+		return isNumeric1 && isNumeric2 ? "double" : "string";
+	}
+
+	private static String baseType ( String type )
+	{
+		return type.endsWith ( "[]" ) ? type.substring ( 0, type.length () - 2 ) : type;
+	}
+}
@@ -0,0 +1,62 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.jena.rdf.model.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeHandler;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
+
+/**
+ * <h1>The neo4j-admin CSV Node Export handler.</h1>
+ *
+ * Writes sets of {@link PGNode property graph nodes} mapped from RDF into the neo4j-admin import CSV files 
+ * managed by {@link Neo4jCsvDataManager}.
+ * 
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component @Scope ( scopeName = "pgmakerSession" )
+public class CsvNodeExportHandler extends PGNodeHandler
+{
+	@Autowired
+	private Neo4jCsvDataManager csvDataMgr;
+	
+	@Override
+	public void accept ( Set<Resource> nodeResources )
+	{		
+		this.renameThread ( "csvNodeX:" );
+		log.trace ( "Begin CSV export of {} node(s)", nodeResources.size () );
+					
+		String defaultLabel = csvDataMgr.getDefaultLabel ();
+
+		for ( PGNode pgNode: this.getPGNodes ( nodeResources ) )
+		{
+			Map<String, Object> nodeProps = csvDataMgr.flatPGProperties ( pgNode );
+			// It goes to the ID column
+			nodeProps.remove ( "iri" );
+					
+			SortedSet<String> labels = new TreeSet<> ( pgNode.getLabels () );
+			labels.add ( defaultLabel );
+			
+			csvDataMgr.writeNode ( labels, pgNode.getIri (), nodeProps );
+		}
+		
+		log.debug ( "{} node(s) sent to CSV", nodeResources.size () );
+	}
+
+	/**
+	 * This is usually set by Spring. This setter is for the tests running outside of Spring.
+	 */
+	public void setCsvDataMgr ( Neo4jCsvDataManager csvDataMgr )
+	{
+		this.csvDataMgr = csvDataMgr;
+	}
+}
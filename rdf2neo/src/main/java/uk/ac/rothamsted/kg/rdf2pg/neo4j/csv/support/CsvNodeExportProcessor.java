@@ -0,0 +1,20 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeMakeProcessor;
+
+/**
+ * <H1>The CSV Node Export processor</H1>
+ * 
+ * <p>Gets node IRIs from a SPARQL query and sends them to a {@link CsvNodeExportHandler}, in multi-thread mode.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component @Scope ( scopeName = "pgmakerSession" )
+public class CsvNodeExportProcessor extends PGNodeMakeProcessor<CsvNodeExportHandler>
+{
+}
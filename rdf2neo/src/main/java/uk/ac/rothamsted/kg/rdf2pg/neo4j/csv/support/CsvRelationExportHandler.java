@@ -0,0 +1,54 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.QuerySolution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGRelationHandler;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
+
+/**
+ * Similarly to {@link CsvNodeExportHandler}, this is used by {@link CsvRelationExportProcessor} to process
+ * relation mappings from RDF and export them into neo4j-admin import CSV files.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component @Scope ( scopeName = "pgmakerSession" )
+public class CsvRelationExportHandler extends PGRelationHandler
+{
+	@Autowired
+	private Neo4jCsvDataManager csvDataMgr;
+
+	@Override
+	public void accept ( Set<QuerySolution> relRecords )
+	{
+		this.renameThread ( "csvRelX:" );
+		log.trace ( "Begin CSV export of {} relation(s)", relRecords.size () );
+		
+		for ( PGRelation pgRelation : this.getPGRelations ( relRecords ) )
+		{			
+			Map<String, Object> relProps = csvDataMgr.flatPGProperties ( pgRelation );
+			relProps.put ( "iri", String.valueOf ( pgRelation.getIri () ) );
+			
+			csvDataMgr.writeRelation ( 
+				pgRelation.getType (), pgRelation.getFromIri (), pgRelation.getToIri (), relProps 
+			);
+		}
+
+		log.debug ( "{} relation(s) sent to CSV", relRecords.size () );
+	}
+
+	/**
+	 * This is usually set by Spring. This setter is for the tests running outside of Spring.
+	 */
+	public void setCsvDataMgr ( Neo4jCsvDataManager csvDataMgr )
+	{
+		this.csvDataMgr = csvDataMgr;
+	}
+}
@@ -0,0 +1,226 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support;
+
+import static uk.ac.ebi.utils.exceptions.ExceptionUtils.buildEx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.AbstractPGDataManager;
+
+/**
+ * Manages the CSV output for the <a href = "https://neo4j.com/docs/operations-manual/current/tools/neo4j-admin/neo4j-admin-import/">
+ * neo4j-admin import</a> tool.
+ *
+ * <p>Nodes are written in groups based on their label sets, relations in groups based on their type, see
+ * {@link CsvGroupWriter}. The node <code>iri</code> property is used as ID, in the <code>iri</code> ID space.</p>
+ *
+ * <p>At the end of the export, {@link #finish()} writes {@link #IMPORT_ARGS_FILE_NAME}, which lists all the
+ * files written and the options needed to import them, eg, <code>neo4j-admin database import full
+ * &#64;neo4j-admin-import.args</code>. Relations pointing to nodes that weren't exported are skipped by the
+ * import (<code>--skip-bad-relationships</code>, which is subject to neo4j-admin's <code>--bad-tolerance</code>).</p>
+ *
+ * <p>No more than {@link #getMaxOpenFiles()} group files are kept open at the same time, the least recently
+ * used ones are closed and reopened in append mode when needed.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component
+public class Neo4jCsvDataManager extends AbstractPGDataManager
+{
+	public static final String IMPORT_ARGS_FILE_NAME = "neo4j-admin-import.args";
+	public static final String ID_SPACE = "iri";
+
+	private Path outputDir = null;
+	private char arrayDelimiter = '\u001F';
+	private int maxOpenFiles = 256;
+
+	private Map<SortedSet<String>, CsvGroupWriter> nodeWriters = new ConcurrentHashMap<> ();
+	private Map<String, CsvGroupWriter> relationWriters = new ConcurrentHashMap<> ();
+	private AtomicInteger nodeGroupsCount = new AtomicInteger (), relationGroupsCount = new AtomicInteger ();
+	
+	/** The LRU of open writers, guarded by itself */
+	private final Map<CsvGroupWriter, Boolean> openWriters = new LinkedHashMap<> ( 16, 0.75f, true ) 
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry ( Map.Entry<CsvGroupWriter, Boolean> eldest )
+		{
+			if ( size () <= maxOpenFiles ) return false;
+			eldest.getKey ().closeOutput ();
+			return true;
+		}
+	};
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+
+	public void writeNode ( SortedSet<String> labels, String iri, Map<String, Object> props )
+	{
+		var writer = nodeWriters.computeIfAbsent ( labels, ls -> new CsvGroupWriter (
+			outputDir, "nodes_" + nodeGroupsCount.getAndIncrement (), arrayDelimiter,
+			"iri:ID(" + ID_SPACE + ")", ":LABEL"
+		));
+		touchWriter ( writer );
+		writer.write ( List.of ( iri, String.join ( String.valueOf ( arrayDelimiter ), labels ) ), props );
+	}
+
+	public void writeRelation ( String type, String fromIri, String toIri, Map<String, Object> props )
+	{
+		var writer = relationWriters.computeIfAbsent ( type, t -> new CsvGroupWriter (
+			outputDir, "rels_" + relationGroupsCount.getAndIncrement (), arrayDelimiter,
+			":START_ID(" + ID_SPACE + ")", ":END_ID(" + ID_SPACE + ")", ":TYPE"
+		));
+		touchWriter ( writer );
+		writer.write ( List.of ( fromIri, toIri, type ), props );
+	}
+
+	/**
+	 * Marks a writer as the most recently used, closing the least recently used one if needed. The limit is 
+	 * approximate, since a concurrent thread could reopen an evicted writer before this method returns, but
+	 * that means that no more than {@link #getMaxOpenFiles()} + the no. of writing threads are open.
+	 */
+	private void touchWriter ( CsvGroupWriter writer )
+	{
+		synchronized ( openWriters ) {
+			openWriters.put ( writer, Boolean.TRUE );
+		}
+	}
+
+
+	/**
+	 * Closes all the outputs and writes the neo4j-admin arguments file.
+	 */
+	public synchronized void finish ()
+	{
+		var sb = new StringBuilder ();
+		sb.append ( "--id-type=string\n" );
+		sb.append ( "--array-delimiter=" ).append ( formatDelimiter ( arrayDelimiter ) ).append ( '\n' );
+		sb.append ( "--multiline-fields=true\n" );
+		// The same node can be mapped by multiple config items
+		sb.append ( "--skip-duplicate-nodes=true\n" );
+		// Relations can point to nodes that no config item exported
+		sb.append ( "--skip-bad-relationships=true\n" );
+
+		nodeWriters.values ().forEach ( w -> appendFileArgs ( "--nodes", w.finish (), sb ) );
+		relationWriters.values ().forEach ( w -> appendFileArgs ( "--relationships", w.finish (), sb ) );
+
+		Path argsPath = outputDir.resolve ( IMPORT_ARGS_FILE_NAME );
+		try {
+			Files.writeString ( argsPath, sb.toString (), StandardCharsets.UTF_8 );
+		}
+		catch ( IOException ex ) {
+			throw buildEx ( UncheckedIOException.class, ex,
+				"Error while writing the neo4j-admin arguments file \"%s\": %s", argsPath, ex.getMessage ()
+			);
+		}
+
+		log.info (
+			"neo4j-admin CSV export: {} node group(s) and {} relation type(s) written to \"{}\"",
+			nodeWriters.size (), relationWriters.size (), outputDir
+		);
+		nodeWriters.clear ();
+		relationWriters.clear ();
+		synchronized ( openWriters ) {
+			openWriters.clear ();
+		}
+	}
+
+	/**
+	 * Non-printable delimiters are written in the neo4j-admin 'U+XXXX' syntax.
+	 */
+	private static String formatDelimiter ( char delimiter )
+	{
+		if ( delimiter > ' ' && delimiter < 127 ) return String.valueOf ( delimiter );
+		return String.format ( "U+%04X", (int) delimiter );
+	}
+
+	private static void appendFileArgs ( String option, List<Path[]> parts, StringBuilder sb )
+	{
+		for ( Path[] part: parts )
+			sb.append ( option ).append ( '=' )
+				.append ( part [ 0 ].toAbsolutePath () ).append ( ',' )
+				.append ( part [ 1 ].toAbsolutePath () ).append ( '\n' );
+	}
+
+
+	/**
+	 * Where the CSV files go. Setting this resets the state and creates the directory if needed.
+	 */
+	public Path getOutputDir ()
+	{
+		return outputDir;
+	}
+
+	public synchronized void setOutputDir ( String outputDir )
+	{
+		this.outputDir = Paths.get ( outputDir );
+		try {
+			Files.createDirectories ( this.outputDir );
+		}
+		catch ( IOException ex ) {
+			throw buildEx ( UncheckedIOException.class, ex,
+				"Error while creating the CSV output directory \"%s\": %s", outputDir, ex.getMessage ()
+			);
+		}
+		nodeWriters.clear ();
+		relationWriters.clear ();
+		synchronized ( openWriters ) {
+			openWriters.clear ();
+		}
+		nodeGroupsCount.set ( 0 );
+		relationGroupsCount.set ( 0 );
+	}
+
+	/**
+	 * The separator for multi-value properties and multiple labels. neo4j-admin has no escaping for it, so the 
+	 * default is the ASCII unit separator (U+001F), which is unlikely to appear in the data. If an array element
+	 * contains the delimiter, it's replaced by a space (and a warning is logged).
+	 */
+	public char getArrayDelimiter ()
+	{
+		return arrayDelimiter;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jCsvArrayDelimiter" )
+	public void setArrayDelimiter ( char arrayDelimiter )
+	{
+		this.arrayDelimiter = arrayDelimiter;
+	}
+
+	/**
+	 * The max no. of CSV files that are kept open at the same time. Default is 256. This prevents 
+	 * 'too many open files' errors when there are many label sets or relation types. 
+	 */
+	public int getMaxOpenFiles ()
+	{
+		return maxOpenFiles;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jCsvMaxOpenFiles" )
+	public void setMaxOpenFiles ( int maxOpenFiles )
+	{
+		if ( maxOpenFiles < 1 ) throw new IllegalArgumentException ( 
+			"Neo4j CSV exporter: maxOpenFiles must be >= 1, got " + maxOpenFiles 
+		);
+		this.maxOpenFiles = maxOpenFiles;
+	}
+}
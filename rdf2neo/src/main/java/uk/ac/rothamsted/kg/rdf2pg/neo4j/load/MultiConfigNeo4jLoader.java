@@ -1,7 +1,10 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.Neo4jDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.NodeIdCache;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
 
 /**
@@ -14,6 +17,9 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
 @Component
 public class MultiConfigNeo4jLoader extends MultiConfigPGMaker<Neo4jConfigItem, SimpleCyLoader>
 {
+	private Boolean upsertMode = null;
+	private NodeIdCache nodeIdCache = null;
+	
 	/**
 	 * Just a wrapper of {@link #make(String, Object...)}.
 	 */
@@ -22,10 +28,14 @@ public class MultiConfigNeo4jLoader extends MultiConfigPGMaker<Neo4jConfigItem,
 		super.make ( tdbPath );
 	}
 
+	/**
+	 * Resets the {@link NodeIdCache}, if any, since its IDs aren't valid across runs.
+	 */
 	@Override
 	protected void makeBegin ( String tdbPath, Object... opts )
 	{
 		super.makeBegin ( tdbPath, opts );
+		if ( nodeIdCache != null ) nodeIdCache.reset ();
 	}
 
 	/**
@@ -38,8 +48,40 @@ public class MultiConfigNeo4jLoader extends MultiConfigPGMaker<Neo4jConfigItem,
 		try ( SimpleCyLoader cyLoader = this.getPGMakerFactory ().getObject (); )
 		{
 			cfg.configureMaker ( cyLoader );
+			if ( upsertMode != null ) cyLoader.setUpsertMode ( upsertMode );
+
 			cyLoader.make ( tdbPath, mode == 0, mode == 1, mode == 2 );
 		}		
 	}
-	
+
+	/**
+	 * If not null, overrides {@link Neo4jDataManager#isUpsertMode()} for all the config items, which allows 
+	 * for choosing the mode per run (eg, from the command line), without changing the configuration. This 
+	 * has priority over {@link Neo4jConfigItem#getUpsertMode()}.
+	 * 
+	 * @see SimpleCyLoader#getUpsertMode() 
+	 */
+	public Boolean getUpsertMode ()
+	{
+		return upsertMode;
+	}
+
+	public void setUpsertMode ( Boolean upsertMode )
+	{
+		this.upsertMode = upsertMode;
+	}
+
+	/**
+	 * The cache shared by the config items, which needs to be reset at the begin of a run. 
+	 */
+	public NodeIdCache getNodeIdCache ()
+	{
+		return nodeIdCache;
+	}
+
+	@Autowired ( required = false )
+	public void setNodeIdCache ( NodeIdCache nodeIdCache )
+	{
+		this.nodeIdCache = nodeIdCache;
+	}
 }
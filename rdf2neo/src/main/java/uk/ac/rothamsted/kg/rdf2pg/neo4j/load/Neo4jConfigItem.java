@@ -1,9 +1,10 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load;
 
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.Neo4jDataManager;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
 
 /**
- * Extends the parent with the indexing stuff.
+ * Extends the parent with the indexing stuff and the Neo4j options that can be set per config item.
  *
  * @author brandizi
  * <dl><dt>Date:</dt><dd>29 Jun 2020</dd></dl>
@@ -12,6 +13,8 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
  public class Neo4jConfigItem extends ConfigItem<SimpleCyLoader>
 {
 	private String indexesSparql;
+	private Integer callInTransactionsRows = null;
+	private Boolean upsertMode = null;
 	
 	public Neo4jConfigItem () {}
 
@@ -30,10 +33,51 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
 	}
 
 
+	/**
+	 * If not null, overrides {@link Neo4jDataManager#getCallInTransactionsRows()} for this config item, which 
+	 * allows for using the server-side transactions only for the items with large data (or the other way
+	 * round).
+	 */
+	public Integer getCallInTransactionsRows ()
+	{
+		return callInTransactionsRows;
+	}
+
+	public void setCallInTransactionsRows ( Integer callInTransactionsRows )
+	{
+		this.callInTransactionsRows = callInTransactionsRows;
+	}
+
+
+	/**
+	 * If not null, overrides {@link Neo4jDataManager#isUpsertMode()} for this config item, eg, to upsert only the 
+	 * items that are reloaded. Note that {@link MultiConfigNeo4jLoader#getUpsertMode()} has priority over this.
+	 * 
+	 * @see SimpleCyLoader#getUpsertMode()
+	 */
+	public Boolean getUpsertMode ()
+	{
+		return upsertMode;
+	}
+
+	public void setUpsertMode ( Boolean upsertMode )
+	{
+		this.upsertMode = upsertMode;
+	}
+
+
 	@Override
 	public void configureMaker ( SimpleCyLoader cypherLoader )
 	{
 		super.configureMaker ( cypherLoader );
+		
+		if ( this.upsertMode != null ) cypherLoader.setUpsertMode ( upsertMode );
+		
+		if ( this.callInTransactionsRows != null )
+			// The data manager is shared by all the components of the session
+			cypherLoader.getPGNodeMaker ().getBatchJob ().getNeo4jDataManager ()
+				.setCallInTransactionsRows ( callInTransactionsRows );
+		
 		if ( this.indexesSparql == null ) return;
 		cypherLoader.getCypherIndexer ().setIndexesSparql ( indexesSparql );
 	}
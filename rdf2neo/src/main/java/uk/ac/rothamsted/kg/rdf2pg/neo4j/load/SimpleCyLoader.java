@@ -9,6 +9,8 @@ import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyNodeLoadingProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingHandler;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CypherIndexer;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.Neo4jDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.NodeIdCache;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.SimplePGMaker;
 
 /**
@@ -18,8 +20,9 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.SimplePGMaker;
  * 	This maps to Cypher queries that create node and relation entities.
  * </p>  
  *
- * <p><b>WARNING</b>: we assume the target graph database is initially empty. For instance, we send CREATE
- * &lt;node&gt; instructions, without checking if a node already exists.</p>
+ * <p><b>WARNING</b>: by default, we assume the target graph database is initially empty. For instance, we send 
+ * CREATE &lt;node&gt; instructions, without checking if a node already exists. Use 
+ * {@link Neo4jDataManager#isUpsertMode() the upsert mode} to load into a non-empty database.</p>
  * 
  * @author brandizi
  * <dl><dt>Date:</dt><dd>11 Dec 2017</dd></dl>
@@ -30,6 +33,35 @@ public class SimpleCyLoader extends
   SimplePGMaker<CyNodeLoadingHandler, CyRelationLoadingHandler, CyNodeLoadingProcessor, CyRelationLoadingProcessor>
 {	
 	private CypherIndexer cypherIndexer;
+	private Boolean upsertMode = null;
+	
+	/**
+	 * Applies {@link #getUpsertMode()}, if set.
+	 * 
+	 * If this run loads both the nodes and the relations, it's a self-contained load, so the 
+	 * {@link NodeIdCache}, if any, is reset, since its IDs aren't valid across loads. When the nodes and the 
+	 * relations are loaded by separate runs (eg, by {@link MultiConfigNeo4jLoader}, which resets the cache
+	 * on its own), the relations need the IDs captured by the node runs, so the cache isn't touched.
+	 */
+	@Override
+	protected void makeBegin ( String tdbPath, Object... opts )
+	{
+		super.makeBegin ( tdbPath, opts );
+		
+		boolean doNodes = opts != null && opts.length > 0 ? (Boolean) opts [ 0 ] : true;
+		boolean doRels = opts != null && opts.length > 1 ? (Boolean) opts [ 1 ] : true;
+		if ( doNodes && doRels ) 
+		{
+			NodeIdCache idCache = this.getPGNodeMaker ().getBatchJob ().getNeo4jDataManager ().getNodeIdCache ();
+			if ( idCache != null ) idCache.reset ();
+		}
+		
+		if ( this.upsertMode == null ) return;
+		
+		// Normally, it's the same session instance, but they might be configured differently
+		this.getPGNodeMaker ().getBatchJob ().getNeo4jDataManager ().setUpsertMode ( upsertMode );
+		this.getPGRelationMaker ().getBatchJob ().getNeo4jDataManager ().setUpsertMode ( upsertMode );
+	}
 	
 	@Override
 	protected void makeBody ( String tdbPath, Object... opts )
@@ -62,4 +94,19 @@ public class SimpleCyLoader extends
 	{
 		this.cypherIndexer = cypherIndexer;
 	}
+
+	/**
+	 * If not null, overrides {@link Neo4jDataManager#isUpsertMode()} for this loader (ie, for its 
+	 * handlers), see {@link Neo4jConfigItem#getUpsertMode()} and {@link MultiConfigNeo4jLoader#getUpsertMode()}. 
+	 * Default is null, ie, the data manager's own setting is used.
+	 */
+	public Boolean getUpsertMode ()
+	{
+		return upsertMode;
+	}
+
+	public void setUpsertMode ( Boolean upsertMode )
+	{
+		this.upsertMode = upsertMode;
+	}
 }
@@ -0,0 +1,55 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+/**
+ * A minimal <a href = "https://en.wikipedia.org/wiki/Count%E2%80%93min_sketch">count-min sketch</a>, used by
+ * {@link EndpointPartitionScheduler} to spot hub nodes in the relation stream, without having to keep a counter
+ * per node.
+ *
+ * <p>The estimates are never lower than the true counts. We use the conservative update variant, which
+ * reduces the over-estimation considerably. This class isn't thread-safe.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+class CountMinSketch
+{
+	private final int [][] counts;
+	private final int mask;
+
+	/**
+	 * @param widthBits the width of each row is 2^widthBits
+	 */
+	CountMinSketch ( int depth, int widthBits )
+	{
+		this.counts = new int [ depth ][ 1 << widthBits ];
+		this.mask = ( 1 << widthBits ) - 1;
+	}
+
+	/**
+	 * Increments the count for the key and returns its new estimate.
+	 */
+	int add ( Object key )
+	{
+		int h1 = key.hashCode ();
+		// A second hash to build the row hashes as h1 + i * h2, taken from the Murmur3 finaliser
+		int h2 = h1 * 0x85ebca6b;
+		h2 ^= h2 >>> 13;
+		h2 *= 0xc2b2ae35;
+		h2 ^= h2 >>> 16;
+		h2 |= 1;
+
+		int min = Integer.MAX_VALUE;
+		for ( int i = 0; i < counts.length; i++ )
+			min = Math.min ( min, counts [ i ][ ( h1 + i * h2 ) & mask ] );
+
+		// Conservative update: only the counters that are at the min need to be increased
+		int result = min == Integer.MAX_VALUE ? min : min + 1;
+		for ( int i = 0; i < counts.length; i++ )
+		{
+			int idx = ( h1 + i * h2 ) & mask;
+			if ( counts [ i ][ idx ] < result ) counts [ i ][ idx ] = result;
+		}
+		return result;
+	}
+}
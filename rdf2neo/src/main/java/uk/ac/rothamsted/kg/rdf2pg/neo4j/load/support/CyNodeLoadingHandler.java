@@ -1,25 +1,25 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.rdf.model.Resource;
-import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeHandler;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
-import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 
 /**
  * <h1>The Cypher Node Loading handler.</h1>
@@ -36,6 +36,8 @@ public class CyNodeLoadingHandler extends PGNodeHandler
 {
 	private Neo4jDataManager neo4jDataManager;
 	
+	private CypherSchemaManager schemaManager = new CypherSchemaManager ();
+	
 	public CyNodeLoadingHandler ()
 	{
 		super ();
@@ -52,22 +54,20 @@ public class CyNodeLoadingHandler extends PGNodeHandler
 		// This is necessary to build a CREATE Cypher command that takes multiple nodes as parameter, since the 
 		// node labels cannot be parameterised
 		//
-		Map<SortedSet<String>, List<Map<String, Object>>> cyData = new HashMap<> ();
+		Map<SortedSet<String>, List<Value>> cyData = new HashMap<> ();
 				
 		Neo4jDataManager neoMgr = this.getNeo4jDataManager ();
-		RdfDataManager rdfMgr = this.getRdfDataManager ();
 		String defaultLabel = neoMgr.getDefaultLabel ();
 
 		// So, let's prepare the nodes
-		for ( Resource nodeRes: nodeResources )
+		for ( PGNode cyNode: this.getPGNodes ( nodeResources ) )
 		{
-			PGNode cyNode = rdfMgr.getPGNode ( nodeRes, this.getLabelsSparql (), this.getNodePropsSparql () );
 			SortedSet<String> labels = new TreeSet<> ( cyNode.getLabels () );
 			labels.add ( defaultLabel );
 			
-			List<Map<String, Object>> cyNodes = cyData.computeIfAbsent ( labels, l -> new LinkedList<> () );
+			List<Value> cyNodes = cyData.computeIfAbsent ( labels, l -> new ArrayList<> () );
 
-			cyNodes.add ( neoMgr.flatPGProperties ( cyNode ) );
+			cyNodes.add ( CyValueEncoder.encodeNode ( cyNode ) );
 		} 
 		
 		// OK, now we are ready to call Neo!
@@ -75,14 +75,30 @@ public class CyNodeLoadingHandler extends PGNodeHandler
 		log.trace ( "Sending {} node(s) to Cypher", nodeResources.size () );
 
 		// The labels are a constant wrt the underlying graph database, but they are varied by us for each label set
-		String cypherCreateNodes = "UNWIND $nodes AS node\n" + 
-			"CREATE (n:%s)\n" +
-			"SET n = node";
+		String cypherCreateNodes = neoMgr.isUpsertMode () 
+			// Merge on the default label, which has the iri constraint 
+			? "MERGE (n:`" + defaultLabel + "`{ iri: node.iri })\n" +
+				"SET n = node, n:%s"
+			: "CREATE (n:%s)\n" +
+				"SET n = node";
 		
-		// and this is where it happens
+		// If we have the ID cache, get back the IDs of the new nodes. This isn't possible with the server-side
+		// transactions
+		NodeIdCache idCache = neoMgr.getNodeIdCache ();
+		Consumer<Record> idsHandler = null;
+		boolean useIdCache = idCache != null && idCache.isEnabled () && neoMgr.getCallInTransactionsRows () <= 0;
+		cypherCreateNodes = neoMgr.buildUnwindCypher ( "nodes", "node", cypherCreateNodes );
+		if ( useIdCache ) 
+		{
+			cypherCreateNodes += "\nRETURN node.iri AS iri, id(n) AS id";
+			idsHandler = rec -> idCache.put ( rec.get ( 0 ).asString (), rec.get ( 1 ).asLong () );
+		}
+		
+		// One statement per label set, all of them are sent in the same transaction
 		//
+		Map<String, List<Value>> cyStatements = new HashMap<> ();
 		long nodesCtr = 0;
-		for ( Entry<SortedSet<String>, List<Map<String, Object>>> cyDataE: cyData.entrySet () )
+		for ( Entry<SortedSet<String>, List<Value>> cyDataE: cyData.entrySet () )
 		{
 			SortedSet<String> labels = cyDataE.getKey ();
 
@@ -92,33 +108,33 @@ public class CyNodeLoadingHandler extends PGNodeHandler
 				.collect ( Collectors.joining ( ":" ) );
 			
 			String cyCreateStr = String.format ( cypherCreateNodes, labelsStr );
-			List<Map<String, Object>> props = cyDataE.getValue ();
+			List<Value> props = cyDataE.getValue ();
 			
-			// So, this structure with a list having a map per each node is the parameter to be sent to Cypher (for unwinding) 
-			neoMgr.runCypher ( cyCreateStr, "nodes", props );
+			// Index the 'iri' for these labels, before writing. This does something for new labels only
+			this.getSchemaManager ().ensureNodeIndexes ( labels, neoMgr );
 			
-			// And now, index the 'iri' for these labels
-			for ( String label: labels )
-				try {
-					neoMgr.runCypher ( String.format ( 
-						"CREATE INDEX IF NOT EXISTS FOR (n:`%s`) ON (n.iri)", label 
-					));
-				}
-				catch ( ClientException ex )
-				{
-					// This seems to happen due to concurrency, the index is already there, so let's give up the duplicated
-					// attempt
-					if ( ! StringUtils.containsIgnoreCase ( ex.getMessage (), "equivalent index already exists" ) )
-						throw ex;
-			}
+			// So, this structure with a list having a map per each node is the parameter to be sent to Cypher (for unwinding) 
+			cyStatements.put ( cyCreateStr, props );
 			
 			nodesCtr += props.size ();
 		}
 		
+		// and this is where it happens
+		neoMgr.writeRows ( "nodes", cyStatements, idsHandler );
+		
 		log.debug ( "{} actual node(s) sent to Cypher", nodesCtr );
 	}
 			
 	
+	/**
+	 * @see Neo4jDataManager#flushWrites()
+	 */
+	@Override
+	public void flush ()
+	{
+		neo4jDataManager.flushWrites ();
+	}
+	
 	/**
 	 * This is used to manage operations with the Neo4j target. We don't care about closing this, the invoker
 	 * has to do it. 
@@ -133,5 +149,20 @@ public class CyNodeLoadingHandler extends PGNodeHandler
 	{
 		this.neo4jDataManager = neo4jDataManager;
 	}
+
+	/**
+	 * Used to create the Neo4j indexes the first time a label is seen. The Spring-managed instance is shared
+	 * with the other handlers, if you don't use Spring, this handler uses its own instance.
+	 */
+	public CypherSchemaManager getSchemaManager ()
+	{
+		return schemaManager;
+	}
+
+	@Autowired ( required = false )
+	public void setSchemaManager ( CypherSchemaManager schemaManager )
+	{
+		this.schemaManager = schemaManager;
+	}
 	
 }
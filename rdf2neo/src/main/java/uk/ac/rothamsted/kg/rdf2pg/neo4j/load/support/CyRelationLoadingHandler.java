@@ -1,22 +1,20 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.query.QuerySolution;
-import org.neo4j.driver.exceptions.ClientException;
+import org.neo4j.driver.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGRelationHandler;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
-import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 
 /**
  * Similarly to {@link CyNodeLoadingHandler}, this is used to {@link CyRelationLoadingProcessor} to process relation 
@@ -31,6 +29,8 @@ public class CyRelationLoadingHandler extends PGRelationHandler
 {
 	private Neo4jDataManager neo4jDataManager;
 	
+	private CypherSchemaManager schemaManager = new CypherSchemaManager ();
+	
 	public CyRelationLoadingHandler ()
 	{
 		super ();
@@ -42,30 +42,35 @@ public class CyRelationLoadingHandler extends PGRelationHandler
 		this.renameThread ( "cyRelLoad:" );
 		log.trace ( "Begin of {} relations", relRecords.size () );
 		
-		Map<String, List<Map<String, Object>>> cyData = new HashMap<> ();
+		Map<String, List<Value>> cyData = new HashMap<> ();
+		// The relations which endpoints have known IDs, see below
+		Map<String, List<Value>> cyIdData = new HashMap<> ();
 
-		RdfDataManager rdfMgr = this.getRdfDataManager ();
 		Neo4jDataManager neoMgr = this.getNeo4jDataManager ();
+		NodeIdCache idCache = neoMgr.getNodeIdCache ();
+		boolean useIdCache = idCache != null && idCache.size () > 0;
 
 		// Pre-process relation data in a form suitable for Cypher processing, i.e., group relation data on a 
 		// per-relation type basis and arrange each relation as a map of key/value properties.
+		// Each relation becomes a top map containing basic relation elements (from, to, properties), 
+		// with an inner map containing the relation properties/attributes. 
 		//
-		for ( QuerySolution row: relRecords )
+		for ( PGRelation cyRelation: this.getPGRelations ( relRecords ) )
 		{
-			PGRelation cyRelation = rdfMgr.getPGRelation ( row );
-			rdfMgr.setPGRelationProps ( cyRelation, this.getRelationPropsSparql () );
-
 			String type = cyRelation.getType ();
-			List<Map<String, Object>> cyRels = cyData.get ( type );
-			if ( cyRels == null ) cyData.put ( type, cyRels = new LinkedList<> () );
+			String fromIri = String.valueOf ( cyRelation.getFromIri () );
+			String toIri = String.valueOf ( cyRelation.getToIri () );
 
-			Map<String, Object> cyparams = new HashMap<> ();
-			// We have a top map containing basic relation elements (from, to, properties)
-			cyparams.put ( "fromIri", String.valueOf ( cyRelation.getFromIri () ) );
-			cyparams.put ( "toIri", String.valueOf ( cyRelation.getToIri () ) );
-			// And then we have an inner map containing the relation properties/attributes
-			cyparams.put ( "properties", neoMgr.flatPGProperties ( cyRelation ) );
-			cyRels.add ( cyparams );				
+			// If both the endpoints were created by us, we can match them by ID, which is much faster than the 
+			// index lookup
+			long fromId = useIdCache ? idCache.get ( fromIri ) : -1;
+			long toId = fromId == -1 ? -1 : idCache.get ( toIri );
+			if ( toId != -1 )
+				cyIdData.computeIfAbsent ( type, t -> new ArrayList<> () )
+					.add ( CyValueEncoder.encodeRelation ( cyRelation, fromId, toId ) );
+			else
+				cyData.computeIfAbsent ( type, t -> new ArrayList<> () )
+					.add ( CyValueEncoder.encodeRelation ( cyRelation, fromIri, toIri ) );
 		}
 		
 		// OK, ready to call Neo!
@@ -77,45 +82,65 @@ public class CyRelationLoadingHandler extends PGRelationHandler
 		//
 		// Nodes are always identified by means of their default label ('%1$s'), which is always created for them. 
 		// 
-		String cypherCreateRel = 
-			"UNWIND $relations AS rel\n" +
+		String cypherWriteRel = 
+			( neoMgr.isUpsertMode () 
+				? "MERGE (from)-[r:`%2$s`{ iri: rel.properties.iri }]->(to)\n"
+				: "CREATE (from)-[r:`%2$s`]->(to)\n" 
+			) +
+			"SET r = rel.properties";
+		String cypherCreateRel = neoMgr.buildUnwindCypher ( "relations", "rel",
 		  // So, every item that is unwound has from/to and a property map
 		  // The property map always contain the relation IRI
 			"MATCH ( from:`%1$s`{ iri: rel.fromIri } ), ( to:`%1$s`{ iri: rel.toIri } )\n" +
-			"CREATE (from)-[r:`%2$s`]->(to)\n" +
-			"SET r = rel.properties";
+			cypherWriteRel
+		);
+		String cypherCreateRelById = neoMgr.buildUnwindCypher ( "relations", "rel",
+			"MATCH (from) WHERE id(from) = rel.fromId\n" +
+			"MATCH (to) WHERE id(to) = rel.toId\n" +
+			cypherWriteRel
+		);
 			
 		long relsCtr = 0;
 		String defaultLabel = neoMgr.getDefaultLabel ();
-		for ( Entry<String, List<Map<String, Object>>> cyDataE: cyData.entrySet () )
-		{
-			String type = cyDataE.getKey ();
-			
-			String cyCreateStr = String.format ( cypherCreateRel, defaultLabel, type );
-			List<Map<String, Object>> props = cyDataE.getValue ();
-			
-			neoMgr.runCypher ( cyCreateStr, "relations", props );
-			relsCtr += props.size ();
-			
-			// And now, index the iri for this type (supported since Neo4j 4.3
-			try {
-				neoMgr.runCypher ( String.format ( 
-					"CREATE INDEX IF NOT EXISTS FOR ()-[r:`%s`]-() ON (r.iri)", type 
-				));
-			}
-			catch ( ClientException ex )
+		CypherSchemaManager schemaMgr = this.getSchemaManager ();
+		
+		// The endpoint matching needs the node indexes online. This is a no-op if they're already there.
+		schemaMgr.awaitIndexes ( neoMgr );
+		
+		// As for the nodes, one statement per type, all in the same transaction
+		Map<String, List<Value>> cyStatements = new HashMap<> ();
+		var cyDataByTemplate = List.of ( 
+			Map.entry ( cypherCreateRel, cyData ), Map.entry ( cypherCreateRelById, cyIdData ) 
+		);
+		for ( var cyDataByMatch: cyDataByTemplate )
+			for ( Entry<String, List<Value>> cyDataE: cyDataByMatch.getValue ().entrySet () )
 			{
-				// This seems to happen due to concurrency, the index is already there, so let's give up the duplicated
-				// attempt
-				if ( !StringUtils.containsIgnoreCase ( ex.getMessage (), "equivalent index already exists" ) )
-					throw ex;
-			}			
-		}
+				String type = cyDataE.getKey ();
+				
+				String cyCreateStr = String.format ( cyDataByMatch.getKey (), defaultLabel, type );
+				List<Value> props = cyDataE.getValue ();
+	
+				// Index the iri for this type (supported since Neo4j 4.3), only the first time we see it
+				schemaMgr.ensureRelationIndex ( type, neoMgr );
+				
+				cyStatements.put ( cyCreateStr, props );
+				relsCtr += props.size ();
+			}
+		neoMgr.writeRows ( "relations", cyStatements );
 		
 		log.debug ( "{} actual relations(s) sent to Cypher", relsCtr );		
 	}
 		
 	
+	/**
+	 * @see Neo4jDataManager#flushWrites()
+	 */
+	@Override
+	public void flush ()
+	{
+		neo4jDataManager.flushWrites ();
+	}
+	
 	/**
 	 * This is used to manage operations with the Neo4j target. We don't care about closing this, the invoker
 	 * has to do it. 
@@ -130,5 +155,19 @@ public class CyRelationLoadingHandler extends PGRelationHandler
 	{
 		this.neo4jDataManager = neo4jDataManager;
 	}
+
+	/**
+	 * @see CyNodeLoadingHandler#getSchemaManager().
+	 */
+	public CypherSchemaManager getSchemaManager ()
+	{
+		return schemaManager;
+	}
+
+	@Autowired ( required = false )
+	public void setSchemaManager ( CypherSchemaManager schemaManager )
+	{
+		this.schemaManager = schemaManager;
+	}
 	
 }
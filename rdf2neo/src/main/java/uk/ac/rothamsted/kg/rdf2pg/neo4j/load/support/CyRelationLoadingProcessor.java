@@ -1,9 +1,11 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
 
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 import org.apache.jena.query.QuerySolution;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
@@ -25,6 +27,15 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 @Component @Scope ( scopeName = "pgmakerSession" )
 public class CyRelationLoadingProcessor extends PGRelationMakeProcessor<CyRelationLoadingHandler>
 {	
+	/** 
+	 * Used in upsert mode when {@link #getEndpointPartitions()} isn't set, 2 * the default no. of threads
+	 * of the batch processors.
+	 */
+	public static final int DEFAULT_UPSERT_ENDPOINT_PARTITIONS = 2 * Runtime.getRuntime ().availableProcessors ();
+	
+	private int endpointPartitions = -1;
+	private long hubThreshold = 10000;
+	
 	public CyRelationLoadingProcessor ()
 	{
 		super ();
@@ -43,13 +54,144 @@ public class CyRelationLoadingProcessor extends PGRelationMakeProcessor<CyRelati
 
 		// processNodeIris() passes the IRIs obtained from SPARQL to the IRI consumer set by the BatchProcessor. The latter
 		// pushes the IRI into a batch and submits a full batch to the parallel executor.
+		// With multiple producer partitions, the relations are consumed by multiple threads, see getProducerPartitions()
+		int partitions = this.getProducerPartitions ();
 		Consumer<Consumer<QuerySolution>> relIriProcessor = 
-			solProc -> rdfMgr.processRelationIris ( handler.getRelationTypesSparql (), solProc );
+			solProc -> rdfMgr.processRelationIris ( 
+				handler.getRelationTypesSparql (), partitions, this.getProducerExecutor (), 
+				this.getSynchronizedConsumer ( solProc ) 
+			);
 		
 		super.process ( relIriProcessor );
 		log.info ( "Cypher Relations Loading ended" );
 	}
 
+	/**
+	 * If {@link #getEndpointPartitions()} is set, schedules the batches by means of 
+	 * {@link EndpointPartitionScheduler}, else it uses the default parallel processing.
+	 * 
+	 * In {@link Neo4jDataManager#isUpsertMode() upsert mode}, the endpoint partitions are always used, 
+	 * see {@link #getEndpointPartitions()}.
+	 * 
+	 * When the endpoint partitions are used, {@link Neo4jDataManager#getCoalesceRows() the coalescing} and 
+	 * {@link Neo4jDataManager#isAsyncWrites() the async writes} are disabled during the relation loading, since 
+	 * the partitions rely on each batch having written its own relations when it returns.
+	 */
+	@Override
+	public void process ( Consumer<Consumer<QuerySolution>> sourceItemsProcessor )
+	{
+		int partitions = this.getEndpointPartitions ();
+		if ( partitions <= 0 && this.getBatchJob ().getNeo4jDataManager ().isUpsertMode () )
+		{
+			partitions = DEFAULT_UPSERT_ENDPOINT_PARTITIONS;
+			log.info ( 
+				"Upsert mode, scheduling the relations with {} endpoint partitions, to avoid duplicated MERGEs", 
+				partitions 
+			);
+		}
+		
+		if ( partitions <= 0 ) {
+			super.process ( sourceItemsProcessor );
+			return;
+		}
+		
+		// The data manager is shared with the node loading, so we restore its settings at the end 
+		Neo4jDataManager neoMgr = this.getBatchJob ().getNeo4jDataManager ();
+		int coalesceRows = neoMgr.getCoalesceRows ();
+		if ( coalesceRows > 0 ) 
+		{
+			log.info ( 
+				"The relation endpoint partitions don't work with the coalescing of Neo4j writes, disabling the latter "
+				+ "for the relations" 
+			);
+			neoMgr.setCoalesceRows ( -1 );
+		}
+		// Else, a batch would release its partitions before its transaction is committed
+		boolean isAsyncWrites = neoMgr.isAsyncWrites ();
+		if ( isAsyncWrites ) 
+		{
+			log.info ( 
+				"The relation endpoint partitions don't work with the asynchronous Neo4j writes, disabling the latter "
+				+ "for the relations" 
+			);
+			neoMgr.setAsyncWrites ( false );
+		}
+		
+		try {
+			processPartitioned ( sourceItemsProcessor, partitions );
+		}
+		finally {
+			if ( coalesceRows > 0 ) neoMgr.setCoalesceRows ( coalesceRows );
+			if ( isAsyncWrites ) neoMgr.setAsyncWrites ( true );
+		}
+	}
+
+	private void processPartitioned ( Consumer<Consumer<QuerySolution>> sourceItemsProcessor, int partitions )
+	{
+		ExecutorService executor = this.setupExecutor ();
+		int maxInFlight = this.getMaxInFlightBatches ();
+		
+		var scheduler = new EndpointPartitionScheduler ( 
+			partitions, this.getHubThreshold (), maxInFlight > 0 ? maxInFlight : 2 * partitions, 
+			this::getMaxBatchSize, executor, this.getBatchJob ()
+		);
+		try {
+			sourceItemsProcessor.accept ( this.getBatchSizingConsumer ( scheduler::add ) );
+			scheduler.finish ();
+		}
+		finally {
+			// As the default processing does, all the batches are done at this point. In case of errors, this 
+			// still lets the running batches to finish, but doesn't leave the executor threads around 
+			executor.shutdown ();
+		}
+		
+		this.getBatchJob ().flush ();
+	}
+	
+	/**
+	 * <p>If &gt; 0, the relations are scheduled so that concurrent batches never touch the same nodes, which 
+	 * avoids the lock contention and the deadlocks that concurrent relation transactions have on Neo4j (and 
+	 * the consequent retries, see {@link Neo4jDataManager#getMaxRetries()}), especially when there are 
+	 * nodes with many relations. See {@link EndpointPartitionScheduler} for details.</p>
+	 * 
+	 * <p>This is the no. of partitions the nodes are split into, the max no. of batches that can run in parallel 
+	 * is half of this value, so a good value is 2 * the no. of threads of {@link #getExecutor() the executor}. 
+	 * Each partition pair buffers up to {@link #getMaxBatchSize()} relations, so this shouldn't be too big.</p>
+	 * 
+	 * <p>Default is -1, ie, relations are split into batches in their SPARQL order and batches are run in 
+	 * parallel without any coordination.</p>
+	 * 
+	 * <p>In {@link Neo4jDataManager#isUpsertMode() upsert mode}, if this isn't set, 
+	 * {@link #DEFAULT_UPSERT_ENDPOINT_PARTITIONS} is used. That's because Neo4j can't enforce the uniqueness of 
+	 * relations, so two concurrent MERGEs of the same relation could both create it, while here the relations 
+	 * having the same endpoints are never written concurrently.</p>
+	 */
+	public int getEndpointPartitions ()
+	{
+		return endpointPartitions;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "relationEndpointPartitions" )
+	public void setEndpointPartitions ( int endpointPartitions )
+	{
+		this.endpointPartitions = endpointPartitions;
+	}
+
+	/**
+	 * Used with {@link #getEndpointPartitions()}, the no. of relations after which a node is considered a hub
+	 * and its relations are loaded by a dedicated serial lane. Default is 10000.
+	 */
+	public long getHubThreshold ()
+	{
+		return hubThreshold;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "relationHubThreshold" )
+	public void setHubThreshold ( long hubThreshold )
+	{
+		this.hubThreshold = hubThreshold;
+	}
+
 	/**
 	 * Does nothing but invoking {@link #setBatchJob(Consumer)}. It's here just to accommodate Spring annotations. 
 	 */
@@ -0,0 +1,94 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.AbstractPGDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGEntity;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
+
+/**
+ * Encodes the property graph entities straight into the driver's {@link Value}s that the loading handlers send
+ * as UNWIND rows.
+ *
+ * <p>This is the same as {@link AbstractPGDataManager#flatPGProperties(PGEntity)}, but it saves the
+ * intermediate structures: with the plain Java maps and collections, the driver would convert every map, 
+ * every collection and every value into its own structures. Here, each property value is converted once, 
+ * straight from the entity, and the maps given to the driver already contain {@link Value}s, which
+ * {@link Values#value(Map)} takes as-is, with just a shallow copy of the map. That's a significant part of 
+ * the memory allocated by the loading threads.</p>
+ *
+ * <p>We only use the public factories in {@link Values}, not the driver's internal value classes.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+final class CyValueEncoder
+{
+	private CyValueEncoder () {}
+
+	/**
+	 * A node row, ie, the node properties, including the 'iri'.
+	 */
+	static Value encodeNode ( PGNode node )
+	{
+		return encodeProperties ( node );
+	}
+
+	/**
+	 * A relation row, with the endpoints' IRIs (as 'fromIri', 'toIri') and the 'properties'.
+	 */
+	static Value encodeRelation ( PGRelation relation, String fromIri, String toIri )
+	{
+		return Values.value ( Map.<String, Object> of (
+			"fromIri", Values.value ( fromIri ),
+			"toIri", Values.value ( toIri ),
+			"properties", encodeProperties ( relation )
+		));
+	}
+
+	/**
+	 * A relation row, with the endpoints' node IDs (as 'fromId', 'toId') and the 'properties'.
+	 */
+	static Value encodeRelation ( PGRelation relation, long fromId, long toId )
+	{
+		return Values.value ( Map.<String, Object> of (
+			"fromId", Values.value ( fromId ),
+			"toId", Values.value ( toId ),
+			"properties", encodeProperties ( relation )
+		));
+	}
+
+	private static Value encodeProperties ( PGEntity entity )
+	{
+		Map<String, Set<Object>> props = entity.getProperties ();
+		// + iri, and sized so that it doesn't need to be resized
+		Map<String, Object> result = new HashMap<> ( ( props.size () + 1 ) * 4 / 3 + 1 );
+
+		for ( Entry<String, Set<Object>> prop: props.entrySet () )
+		{
+			Set<Object> vals = prop.getValue ();
+			if ( vals.isEmpty () ) continue; // shouldn't happen, but just in case
+
+			if ( vals.size () == 1 ) {
+				result.put ( prop.getKey (), Values.value ( vals.iterator ().next () ) );
+				continue;
+			}
+
+			Value[] valuesArray = new Value [ vals.size () ];
+			int i = 0;
+			for ( Object v: vals ) valuesArray [ i++ ] = Values.value ( v );
+			result.put ( prop.getKey (), Values.value ( valuesArray ) );
+		}
+
+		result.put ( "iri", Values.value ( entity.getIri () ) );
+		return Values.value ( result );
+	}
+}
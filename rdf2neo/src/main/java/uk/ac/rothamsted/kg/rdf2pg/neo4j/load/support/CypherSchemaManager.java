@@ -0,0 +1,227 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.driver.exceptions.ClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>Manages the Neo4j schema elements that the loading handlers need, namely, the indexes on the 'iri' property 
+ * of node labels and relation types, plus the uniqueness constraint needed by the 
+ * {@link Neo4jDataManager#isUpsertMode() upsert mode}.</p>
+ * 
+ * <p>Each index is created once, the first time its label/type is {@link #ensureNodeIndexes(Collection, Neo4jDataManager) 
+ * seen}, which happens before the first write of entities with that label/type. This avoids sending schema 
+ * commands for every batch, which would also interleave schema transactions with bulk writes.</p>
+ * 
+ * <p>This is a singleton, so that the known labels/types are shared by all the handlers in a loading run 
+ * (including different config items). If the target database is wiped while the same instance is still in 
+ * use, you need to {@link #reset()} it.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component
+public class CypherSchemaManager
+{
+	/** 
+	 * The schema elements being created or already created. Keys are like n:&lt;label&gt;, r:&lt;type&gt; or
+	 * c:&lt;label&gt; (constraints). See {@link #ensureSchemaElement(String, Runnable)}.
+	 */
+	private final Map<String, CompletableFuture<Void>> schemaTasks = new ConcurrentHashMap<> ();
+	
+	/** 
+	 * The no. of indexes created so far and the value it had at the last {@link #awaitIndexes(Neo4jDataManager)}, 
+	 * when they're different, there are indexes to wait for. 
+	 */ 
+	private final AtomicLong createdIndexes = new AtomicLong ();
+	private volatile long awaitedIndexes = 0;
+	
+	private long indexesAwaitTimeout = 600;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * Creates the 'iri' indexes for the node labels, if they weren't created already. If another thread is 
+	 * creating an index for one of these labels, waits for it to finish.
+	 */
+	public void ensureNodeIndexes ( Collection<String> labels, Neo4jDataManager neoMgr )
+	{
+		boolean isUpsert = neoMgr.isUpsertMode ();
+		String defaultLabel = neoMgr.getDefaultLabel ();
+		
+		for ( String label: labels )
+		{
+			// In upsert mode, nodes are merged on the default label, which needs a constraint (that 
+			// is indexed too, so we don't need another index).
+			if ( isUpsert && label.equals ( defaultLabel ) ) 
+				ensureIriConstraint ( label, neoMgr );
+			else
+				ensureIndex ( "n:" + label, "CREATE INDEX IF NOT EXISTS FOR (n:`%s`) ON (n.iri)", label, neoMgr );
+		}
+	}
+
+	/**
+	 * Like {@link #ensureNodeIndexes(Collection, Neo4jDataManager)}, for a relation type.
+	 */
+	public void ensureRelationIndex ( String type, Neo4jDataManager neoMgr )
+	{
+		ensureIndex ( "r:" + type, "CREATE INDEX IF NOT EXISTS FOR ()-[r:`%s`]-() ON (r.iri)", type, neoMgr );
+	}
+	
+	/**
+	 * Creates the uniqueness constraint on label.iri. If there is a plain index on the same label and property 
+	 * (eg, because the DB was loaded without the upsert mode), it drops it first, since Neo4j doesn't allow for 
+	 * both.
+	 */
+	private void ensureIriConstraint ( String label, Neo4jDataManager neoMgr )
+	{
+		ensureSchemaElement ( "c:" + label, () ->
+		{
+			List<String> plainIndexes = new ArrayList<> ();
+			neoMgr.processCypherMatches ( 
+				rec -> plainIndexes.add ( rec.get ( "name" ).asString () ),
+				"SHOW INDEXES YIELD name, labelsOrTypes, properties, owningConstraint\n"
+				+ "WHERE labelsOrTypes = [ $label ] AND properties = [ 'iri' ] AND owningConstraint IS NULL\n"
+				+ "RETURN name",
+				"label", label
+			);
+			for ( String idxName: plainIndexes )
+			{
+				log.info ( "Replacing the Neo4j index '{}' with a uniqueness constraint on {}.iri", idxName, label );
+				neoMgr.runCypher ( String.format ( "DROP INDEX `%s` IF EXISTS", idxName ) );
+			}
+
+			log.debug ( "Creating Neo4j uniqueness constraint for {}.iri", label );
+			neoMgr.runCypher ( String.format ( 
+				"CREATE CONSTRAINT IF NOT EXISTS FOR (n:`%s`) REQUIRE n.iri IS UNIQUE", label 
+			));
+		});
+	}
+	
+	private void ensureIndex ( String key, String cypherTemplate, String labelOrType, Neo4jDataManager neoMgr )
+	{
+		ensureSchemaElement ( key, () -> 
+		{
+			log.debug ( "Creating Neo4j index for {}.iri", key );
+			try {
+				neoMgr.runCypher ( String.format ( cypherTemplate, labelOrType ) );
+			}
+			catch ( ClientException ex )
+			{
+				// This might still happen when multiple loaders run against the same DB, the index is already there,
+				// so let's give up the duplicated attempt. The second case is when the property is already indexed by 
+				// an upsert mode constraint.
+				String msg = ex.getMessage ();
+				if ( !( StringUtils.containsIgnoreCase ( msg, "equivalent index already exists" ) 
+					      || StringUtils.containsIgnoreCase ( msg, "an index is already created" ) ) )
+					throw ex;
+			}
+		});
+	}
+	
+	/**
+	 * <p>Runs the creator of a schema element (index/constraint) once per key.</p>
+	 * 
+	 * <p>The first thread that asks for a key registers a future for it and runs the creator, the others 
+	 * wait for the future, since they're about to write on the corresponding label/type. This way, the 
+	 * creation (ie, the remote calls) doesn't happen inside the map's atomic operations, which would block 
+	 * other keys too and isn't allowed by {@link ConcurrentHashMap}. If the creation fails, the key is 
+	 * removed, so that the next request retries it, and the waiting threads get the same error.</p>
+	 */
+	private void ensureSchemaElement ( String key, Runnable creator )
+	{
+		CompletableFuture<Void> task = schemaTasks.get ( key );
+		if ( task == null )
+		{
+			CompletableFuture<Void> newTask = new CompletableFuture<> ();
+			task = schemaTasks.putIfAbsent ( key, newTask );
+			if ( task == null )
+			{
+				// We're the creator
+				try {
+					creator.run ();
+				}
+				catch ( RuntimeException | Error ex ) 
+				{
+					schemaTasks.remove ( key, newTask );
+					newTask.completeExceptionally ( ex );
+					throw ex;
+				}
+				createdIndexes.incrementAndGet ();
+				newTask.complete ( null );
+				return;
+			}
+		}
+		
+		// Another thread is creating it, or it's done
+		try {
+			task.join ();
+		}
+		catch ( CompletionException ex ) 
+		{
+			Throwable cause = ex.getCause ();
+			if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+			throw new IllegalStateException ( 
+				"Error while creating the Neo4j schema element " + key + ": " + cause.getMessage (), cause 
+			);
+		}
+	}
+	
+	/**
+	 * Waits for the indexes to be populated and online, which is needed before operations like matching 
+	 * relation endpoints. This is a no-op if no index was created after the previous invocation, so it's cheap 
+	 * to invoke it before every write that depends on indexes.
+	 */
+	public void awaitIndexes ( Neo4jDataManager neoMgr )
+	{
+		if ( createdIndexes.get () == awaitedIndexes ) return;
+		synchronized ( this )
+		{
+			// The indexes created after this point might not be covered by the call below, they'll be 
+			// awaited by the next invocation
+			long created = createdIndexes.get ();
+			if ( created == awaitedIndexes ) return;
+			
+			log.info ( "Waiting for Neo4j indexes to come online" );
+			neoMgr.runCypher ( "CALL db.awaitIndexes ( $timeout )", "timeout", this.getIndexesAwaitTimeout () );
+			awaitedIndexes = created;
+		}
+	}
+	
+	/**
+	 * Forgets the indexes created so far, so that they will be (re)created upon the next ensure request. 
+	 */
+	public synchronized void reset ()
+	{
+		schemaTasks.clear ();
+		awaitedIndexes = createdIndexes.get ();
+	}
+
+	/**
+	 * The max time {@link #awaitIndexes(Neo4jDataManager)} waits for, in seconds. Default is 600.
+	 */
+	public long getIndexesAwaitTimeout ()
+	{
+		return indexesAwaitTimeout;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jIndexesAwaitTimeout" )
+	public void setIndexesAwaitTimeout ( long indexesAwaitTimeout )
+	{
+		this.indexesAwaitTimeout = indexesAwaitTimeout;
+	}
+}
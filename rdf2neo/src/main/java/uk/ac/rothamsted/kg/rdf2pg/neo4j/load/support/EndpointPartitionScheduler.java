@@ -0,0 +1,336 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import org.apache.jena.query.QuerySolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.SizedBatchTask;
+
+/**
+ * <p>Schedules the relation batches so that concurrent batches don't write the same nodes, which is what causes
+ * lock contention and deadlocks in Neo4j, when multiple transactions create relations between the same nodes.</p>
+ *
+ * <p>The nodes are split into partitions, based on their IRI hashes, and each relation goes to a bucket
+ * corresponding to the (unordered) pair of partitions of its endpoints. A batch from a bucket is started only
+ * when none of its partitions is used by a running batch, which means no node can be used by two running
+ * batches.</p>
+ *
+ * <p>Hub nodes (ie, nodes with a lot of relations) would make their partitions a bottleneck, so they're
+ * detected by counting the endpoints (using {@link CountMinSketch}) and the relations having a hub endpoint are
+ * sent to a dedicated lane. A hub lane batch is run exclusively, ie, only when no other batch is running, and no
+ * other batch is started until it's done. That's because its relations can touch any partition (via their 
+ * non-hub endpoints), and the relations of a hub seen before detecting it are in the partition buckets. 
+ * The batches after a waiting hub batch wait too, so that the hub lane doesn't starve.</p>
+ *
+ * <p>The batches are submitted by the threads that {@link #add(QuerySolution) add} the relations (ie, the RDF
+ * producers), which block when there are too many pending batches. This class is thread-safe.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+class EndpointPartitionScheduler
+{
+	/**
+	 * The executor task for a batch, which tells its size to the adaptive batch sizing 
+	 * (see {@link uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGMakerProcessor#getBatchTargetTime()}). 
+	 * Being a {@link FutureTask}, the errors are kept here, they're reported by {@link #checkBatchError()}.
+	 */
+	private class BatchTask extends FutureTask<Void> implements SizedBatchTask
+	{
+		private final int batchSize;
+		
+		BatchTask ( PendingBatch batch )
+		{
+			super ( () -> runBatch ( batch ), null );
+			this.batchSize = batch.relations.size ();
+		}
+
+		@Override
+		public int getBatchSize ()
+		{
+			return batchSize;
+		}
+	}
+	
+	/**
+	 * A batch that is ready to be run. The partitions are -1 for the hub lane.
+	 */
+	private static class PendingBatch
+	{
+		final int partA, partB;
+		final Set<QuerySolution> relations;
+
+		PendingBatch ( int partA, int partB, Set<QuerySolution> relations )
+		{
+			this.partA = partA;
+			this.partB = partB;
+			this.relations = relations;
+		}
+
+		boolean isHubLane () {
+			return partA < 0;
+		}
+	}
+
+	private final int partitions;
+	private final long hubThreshold;
+	private final int maxPendingBatches;
+	private final IntSupplier batchSizeSupplier;
+	private final Executor executor;
+	private final Consumer<Set<QuerySolution>> batchJob;
+
+	private final CountMinSketch endpointCounts = new CountMinSketch ( 4, 20 );
+	private final List<Set<QuerySolution>> buckets;
+	private Set<QuerySolution> hubBucket = new HashSet<> ();
+
+	private final Deque<PendingBatch> pendingBatches = new ArrayDeque<> ();
+	private final boolean [] busyPartitions;
+	private boolean isHubLaneBusy = false;
+	private int runningBatches = 0;
+	private Throwable batchError = null;
+
+	private long relationsCount = 0, hubRelationsCount = 0, batchesCount = 0;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param partitions the no. of node partitions. The max no. of batches that can run in parallel is
+	 *        partitions / 2.
+	 * @param hubThreshold the no. of relations above which a node is considered a hub
+	 * @param maxPendingBatches the max no. of batches that can be ready and waiting to be run, before
+	 *        {@link #add(QuerySolution)} blocks
+	 * @param batchSizeSupplier gives the batch size, which is used when a bucket is full
+	 * @param executor used to run the batches
+	 * @param batchJob the batch handler
+	 */
+	EndpointPartitionScheduler (
+		int partitions, long hubThreshold, int maxPendingBatches, IntSupplier batchSizeSupplier,
+		Executor executor, Consumer<Set<QuerySolution>> batchJob
+	)
+	{
+		if ( partitions < 1 ) throw new IllegalArgumentException (
+			"The no. of relation endpoint partitions must be at least 1"
+		);
+		this.partitions = partitions;
+		this.hubThreshold = hubThreshold;
+		this.maxPendingBatches = Math.max ( 1, maxPendingBatches );
+		this.batchSizeSupplier = batchSizeSupplier;
+		this.executor = executor;
+		this.batchJob = batchJob;
+
+		int nbuckets = partitions * ( partitions + 1 ) / 2;
+		this.buckets = new ArrayList<> ( nbuckets );
+		for ( int i = 0; i < nbuckets; i++ ) buckets.add ( new HashSet<> () );
+		this.busyPartitions = new boolean [ partitions ];
+	}
+
+
+	/**
+	 * Adds a relation (ie, a row from {@link CyRelationLoadingHandler#getRelationTypesSparql()}) to its bucket and
+	 * possibly submits the batches that are ready.
+	 */
+	void add ( QuerySolution relation )
+	{
+		synchronized ( this )
+		{
+			String fromIri = relation.getResource ( "fromIri" ).getURI ();
+			String toIri = relation.getResource ( "toIri" ).getURI ();
+			relationsCount++;
+
+			int batchSize = batchSizeSupplier.getAsInt ();
+
+			// Both are always counted, to detect hubs in both directions
+			int fromCount = endpointCounts.add ( fromIri ), toCount = endpointCounts.add ( toIri );
+			if ( fromCount >= hubThreshold || toCount >= hubThreshold )
+			{
+				hubRelationsCount++;
+				hubBucket.add ( relation );
+				if ( hubBucket.size () >= batchSize ) {
+					pendingBatches.add ( new PendingBatch ( -1, -1, hubBucket ) );
+					hubBucket = new HashSet<> ();
+				}
+			}
+			else
+			{
+				int partA = partition ( fromIri ), partB = partition ( toIri );
+				if ( partA > partB ) { int t = partA; partA = partB; partB = t; }
+
+				int bucketIdx = partB * ( partB + 1 ) / 2 + partA;
+				Set<QuerySolution> bucket = buckets.get ( bucketIdx );
+				bucket.add ( relation );
+				if ( bucket.size () >= batchSize ) {
+					pendingBatches.add ( new PendingBatch ( partA, partB, bucket ) );
+					buckets.set ( bucketIdx, new HashSet<> () );
+				}
+			}
+		}
+		submitBatches ( maxPendingBatches );
+	}
+
+	/**
+	 * Submits all the remaining relations and waits for all the batches to complete.
+	 *
+	 * @throws RuntimeException if some batch failed.
+	 */
+	void finish ()
+	{
+		synchronized ( this )
+		{
+			for ( int partB = 0; partB < partitions; partB++ )
+				for ( int partA = 0; partA <= partB; partA++ )
+				{
+					Set<QuerySolution> bucket = buckets.get ( partB * ( partB + 1 ) / 2 + partA );
+					if ( !bucket.isEmpty () ) pendingBatches.add ( new PendingBatch ( partA, partB, bucket ) );
+				}
+			if ( !hubBucket.isEmpty () ) pendingBatches.add ( new PendingBatch ( -1, -1, hubBucket ) );
+		}
+
+		submitBatches ( 1 );
+
+		synchronized ( this )
+		{
+			while ( runningBatches > 0 ) waitBatches ();
+			checkBatchError ();
+		}
+
+		log.info (
+			"{} relation(s) loaded in {} batch(es), {} relation(s) in the hub lane",
+			relationsCount, batchesCount, hubRelationsCount
+		);
+	}
+
+
+	/**
+	 * Submits the batches that can be run, until the pending ones are less than maxPending.
+	 * This is never invoked with a lock on this, so that the executor can block while the running batches
+	 * complete.
+	 */
+	private void submitBatches ( int maxPending )
+	{
+		while ( true )
+		{
+			List<Runnable> tasks;
+			synchronized ( this )
+			{
+				checkBatchError ();
+				tasks = pollRunnableBatches ();
+				if ( tasks.isEmpty () )
+				{
+					if ( pendingBatches.size () < maxPending ) return;
+					// We have pending batches and none can be run, so something is running and will notify us
+					waitBatches ();
+					continue;
+				}
+			}
+			tasks.forEach ( executor::execute );
+		}
+	}
+
+	/**
+	 * Takes the batches which of partitions are free, marks their partitions as busy and wraps them into
+	 * tasks for the executor. A hub lane batch is taken only when nothing else is running and it stops the
+	 * polling, both when it's taken and when it has to wait. It's invoked with a lock on this.
+	 */
+	private List<Runnable> pollRunnableBatches ()
+	{
+		List<Runnable> result = new ArrayList<> ();
+		if ( isHubLaneBusy ) return result;
+		
+		for ( Iterator<PendingBatch> itr = pendingBatches.iterator (); itr.hasNext (); )
+		{
+			PendingBatch batch = itr.next ();
+			if ( batch.isHubLane () )
+			{
+				if ( runningBatches > 0 ) break;
+				isHubLaneBusy = true;
+				itr.remove ();
+				runningBatches++;
+				batchesCount++;
+				result.add ( new BatchTask ( batch ) );
+				break;
+			}
+			else
+			{
+				if ( busyPartitions [ batch.partA ] || busyPartitions [ batch.partB ] ) continue;
+				busyPartitions [ batch.partA ] = busyPartitions [ batch.partB ] = true;
+			}
+
+			itr.remove ();
+			runningBatches++;
+			batchesCount++;
+			result.add ( new BatchTask ( batch ) );
+		}
+		return result;
+	}
+
+	private void runBatch ( PendingBatch batch )
+	{
+		try {
+			batchJob.accept ( batch.relations );
+		}
+		catch ( RuntimeException | Error ex )
+		{
+			log.error ( "Error while loading a batch of relations: {}", ex.getMessage (), ex );
+			synchronized ( this ) {
+				if ( batchError == null ) batchError = ex;
+			}
+			// Reaches BatchTask, so that the failure is visible to the executor's wrappers
+			throw ex;
+		}
+		finally
+		{
+			synchronized ( this )
+			{
+				if ( batch.isHubLane () ) isHubLaneBusy = false;
+				else busyPartitions [ batch.partA ] = busyPartitions [ batch.partB ] = false;
+				runningBatches--;
+				this.notifyAll ();
+			}
+		}
+	}
+
+	/**
+	 * The relations sent to the hub lane so far.
+	 */
+	synchronized long getHubRelationsCount ()
+	{
+		return hubRelationsCount;
+	}
+
+	private int partition ( String iri )
+	{
+		return Math.floorMod ( iri.hashCode (), partitions );
+	}
+
+	private void waitBatches ()
+	{
+		try {
+			this.wait ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new IllegalStateException ( "Interrupted while waiting for the relation batches", ex );
+		}
+	}
+
+	private void checkBatchError ()
+	{
+		if ( batchError == null ) return;
+		throw new IllegalStateException (
+			"Error while loading relations: " + batchError.getMessage (), batchError
+		);
+	}
+}
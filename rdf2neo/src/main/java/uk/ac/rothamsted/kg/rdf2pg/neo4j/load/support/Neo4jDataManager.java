@@ -1,16 +1,27 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.AbstractPGDataManager;
+import uk.ac.rothamsted.neo4j.utils.RetryPolicy;
 import uk.org.lidalia.slf4jext.Level;
 
 /**
@@ -24,7 +35,36 @@ import uk.org.lidalia.slf4jext.Level;
 @Component @Scope ( scopeName = "pgmakerSession" )
 public class Neo4jDataManager extends AbstractPGDataManager
 {
+	/**
+	 * The rows waiting to be sent for a Cypher statement, see {@link #getCoalesceRows()}.
+	 */
+	private static class RowsBuffer
+	{
+		final String paramName;
+		final Consumer<Record> resultHandler;
+		final long creationTime = System.currentTimeMillis ();
+		final List<Object> rows = new ArrayList<> ();
+		
+		RowsBuffer ( String paramName, Consumer<Record> resultHandler )
+		{
+			this.paramName = paramName;
+			this.resultHandler = resultHandler;
+		}
+	}
+	
 	private final uk.ac.rothamsted.neo4j.utils.Neo4jDataManager delegateMgr;
+	private boolean upsertMode = false;
+	private boolean asyncWrites = false;
+	private int txMaxRows = -1;
+	private NodeIdCache nodeIdCache = null;
+	private int coalesceRows = -1;
+	private long coalesceMaxAge = 5000;
+	private int callInTransactionsRows = -1;
+	
+	/** Cypher statement -&gt; its pending rows */
+	private final Map<String, RowsBuffer> rowsBuffers = new HashMap<> ();
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
 	
 	public Neo4jDataManager ( Driver neo4jDriver ) {
 		delegateMgr = new uk.ac.rothamsted.neo4j.utils.Neo4jDataManager ( neo4jDriver );
@@ -50,6 +90,178 @@ public class Neo4jDataManager extends AbstractPGDataManager
 		delegateMgr.runCypher ( cypher, keyVals );
 	}
 
+	/**
+	 * <p>Used by the loading handlers to send a batch of data. rowsByCypher maps UNWIND-based Cypher statements to
+	 * the rows they have to unwind, the rows are passed to each statement via the parameter paramName.</p>
+	 * 
+	 * <p>All the statements are sent within a single transaction, unless {@link #getTxMaxRows()} is set, in which 
+	 * case, the rows are split into transactions of that size. Depending on {@link #isAsyncWrites()}, the 
+	 * transactions are run either synchronously or asynchronously.</p>
+	 * 
+	 * <p>If {@link #getRejectsPath()} is set, the rows causing data errors are isolated and discarded, see 
+	 * {@link uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#runUnwindTransaction(String, List)}.</p>
+	 * 
+	 * <p>If {@link #getCoalesceRows()} is set, the rows are buffered per statement, across batches, and are sent 
+	 * later, see there.</p>
+	 */
+	public void writeRows ( String paramName, Map<String, ? extends List<?>> rowsByCypher )
+	{
+		writeRows ( paramName, rowsByCypher, null );
+	}
+	
+	/**
+	 * If resultHandler isn't null, it receives the records returned by the statements, after their transactions
+	 * are committed. In {@link #isAsyncWrites() async mode}, this happens in the driver threads, so it must not 
+	 * block.
+	 */
+	public void writeRows ( 
+		String paramName, Map<String, ? extends List<?>> rowsByCypher, Consumer<Record> resultHandler 
+	)
+	{
+		if ( coalesceRows <= 0 ) {
+			sendRows ( paramName, rowsByCypher, resultHandler );
+			return;
+		}
+		
+		List<Entry<String, RowsBuffer>> readyBuffers = new ArrayList<> ();
+		synchronized ( rowsBuffers )
+		{
+			for ( Entry<String, ? extends List<?>> cyRows: rowsByCypher.entrySet () )
+				rowsBuffers.computeIfAbsent ( cyRows.getKey (), cy -> new RowsBuffer ( paramName, resultHandler ) )
+					.rows.addAll ( cyRows.getValue () );
+			
+			// Check all the buffers, so that the ones for rare statements are sent in a reasonable time 
+			long now = System.currentTimeMillis ();
+			for ( var itr = rowsBuffers.entrySet ().iterator (); itr.hasNext (); )
+			{
+				Entry<String, RowsBuffer> cyBuffer = itr.next ();
+				RowsBuffer buffer = cyBuffer.getValue ();
+				if ( buffer.rows.size () < coalesceRows 
+						 && ( coalesceMaxAge <= 0 || now - buffer.creationTime < coalesceMaxAge ) ) continue;
+				readyBuffers.add ( cyBuffer );
+				itr.remove ();
+			}
+		}
+		// Outside the lock, so that the other threads can go ahead with buffering 
+		readyBuffers.forEach ( this::sendBuffer );
+	}
+	
+	private void sendBuffer ( Entry<String, RowsBuffer> cyBuffer )
+	{
+		RowsBuffer buffer = cyBuffer.getValue ();
+		sendRows ( buffer.paramName, Map.of ( cyBuffer.getKey (), buffer.rows ), buffer.resultHandler );
+	}
+	
+	private void sendRows ( 
+		String paramName, Map<String, ? extends List<?>> rowsByCypher, Consumer<Record> resultHandler 
+	)
+	{
+		if ( callInTransactionsRows > 0 ) 
+		{
+			// The server splits the transactions, which requires one auto-commit transaction per statement.
+			// The MERGE-based statements of the upsert mode can be safely re-attempted after a partial commit
+			rowsByCypher.forEach ( 
+				( cypher, rows ) -> delegateMgr.runAutoCommitCypher ( upsertMode, cypher, paramName, rows ) 
+			);
+			return;
+		}
+		
+		int maxRows = txMaxRows > 0 ? txMaxRows : Integer.MAX_VALUE;
+		
+		List<Entry<String, List<?>>> txStatements = new ArrayList<> ();
+		int txRows = 0;
+		for ( Entry<String, ? extends List<?>> cyRows: rowsByCypher.entrySet () )
+		{
+			List<?> rows = cyRows.getValue ();
+			for ( int i = 0; i < rows.size (); )
+			{
+				int n = Math.min ( rows.size () - i, maxRows - txRows );
+				txStatements.add ( Map.entry ( cyRows.getKey (), rows.subList ( i, i + n ) ) );
+				i += n;
+				txRows += n;
+				
+				if ( txRows < maxRows ) continue;
+				writeTransaction ( paramName, txStatements, resultHandler );
+				txStatements = new ArrayList<> ();
+				txRows = 0;
+			}
+		}
+		if ( !txStatements.isEmpty () ) writeTransaction ( paramName, txStatements, resultHandler );
+	}
+	
+	private void writeTransaction ( 
+		String paramName, List<Entry<String, List<?>>> statements, Consumer<Record> resultHandler 
+	)
+	{
+		if ( log.isTraceEnabled () ) log.trace ( 
+			"Sending {} Cypher statement(s) in one transaction, async: {}", statements.size (), asyncWrites 
+		);
+		
+		if ( asyncWrites ) delegateMgr.runUnwindTransactionAsync ( paramName, statements, resultHandler );
+		else delegateMgr.runUnwindTransaction ( paramName, statements, resultHandler );
+	}
+
+	/**
+	 * Builds an UNWIND statement that runs body for each row in the paramName list, available as rowVar. 
+	 * If {@link #getCallInTransactionsRows()} is set, body is wrapped into <code>CALL { ... } IN TRANSACTIONS</code>.
+	 * This is used by the loading handlers, so that they don't need to care about such mode.
+	 */
+	public String buildUnwindCypher ( String paramName, String rowVar, String body )
+	{
+		String unwind = "UNWIND $" + paramName + " AS " + rowVar + "\n";
+		if ( callInTransactionsRows <= 0 ) return unwind + body;
+		
+		return unwind 
+			+ "CALL {\n"
+			+ "  WITH " + rowVar + "\n"
+			+ "  " + body.replace ( "\n", "\n  " ) + "\n"
+			+ "} IN TRANSACTIONS OF " + callInTransactionsRows + " ROWS";
+	}
+
+	/**
+	 * Sends the {@link #getCoalesceRows() buffered rows}, waits for the {@link #isAsyncWrites() asynchronous writes}, 
+	 * if any, and reports the commit statistics collected since the last call. This is invoked by the handlers at 
+	 * the end of a loading phase. 
+	 */
+	public void flushWrites ()
+	{
+		List<Entry<String, RowsBuffer>> buffers;
+		synchronized ( rowsBuffers ) 
+		{
+			buffers = new ArrayList<> ( rowsBuffers.entrySet () );
+			rowsBuffers.clear ();
+		}
+		buffers.forEach ( this::sendBuffer );
+		
+		if ( asyncWrites ) delegateMgr.awaitAsyncWrites ();
+		
+		long rejectsCount = delegateMgr.getRejectedRowsCount ();
+		if ( rejectsCount > 0 ) log.warn ( 
+			"{} row(s) rejected due to data errors so far, see \"{}\"", rejectsCount, delegateMgr.getRejectsPath () 
+		);
+		
+		if ( delegateMgr.getCommitsCount () == 0 ) return;
+		log.info ( 
+			"{} Neo4j transaction(s) committed, average {} time: {} ms, max: {} ms",
+			delegateMgr.getCommitsCount (), 
+			// See the delegate, in async mode we can only time the whole transactions
+			asyncWrites ? "transaction" : "commit", 
+			String.format ( "%.1f", delegateMgr.getAvgCommitTime () ),
+			String.format ( "%.1f", delegateMgr.getMaxCommitTime () ) 
+		);
+		delegateMgr.resetCommitStats ();
+	}
+
+	public void runCypherAsync ( String cypher, Object... keyVals )
+	{
+		delegateMgr.runCypherAsync ( cypher, keyVals );
+	}
+
+	public void awaitAsyncWrites ()
+	{
+		delegateMgr.awaitAsyncWrites ();
+	}
+
 	public void processCypherMatches ( Consumer<Record> action, String cypher, Object... keyVals )
 	{
 		delegateMgr.processCypherMatches ( action, cypher, keyVals );
@@ -70,6 +282,235 @@ public class Neo4jDataManager extends AbstractPGDataManager
 		delegateMgr.setMaxRetries ( maxRetries );
 	}
 
+	/**
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#getMaxSessions()
+	 */
+	public int getMaxSessions ()
+	{
+		return delegateMgr.getMaxSessions ();
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jMaxSessions" )
+	public void setMaxSessions ( int maxSessions )
+	{
+		delegateMgr.setMaxSessions ( maxSessions );
+	}
+
+	/**
+	 * <p>If true, the loading handlers use MERGE instead of CREATE, so that loading the same data twice 
+	 * doesn't create duplicates and a config item can be re-run or reloaded on an existing database.</p>
+	 * 
+	 * <p>In this mode, nodes are matched by the 'iri' property of the {@link #getDefaultLabel() default label}, 
+	 * which gets a uniqueness constraint (see {@link CypherSchemaManager}), and relations are matched by their 
+	 * type, endpoints and 'iri'. The properties of existing entities are replaced by the loaded ones. This is 
+	 * slower than the default mode, which assumes an empty database.</p>
+	 * 
+	 * <p>If the database was populated in the default mode, the plain index on the default label is replaced by
+	 * the constraint, which means this mode can also be used to update such a database.</p>
+	 * 
+	 * <p>Neo4j can't have uniqueness constraints on relations, so the relation MERGEs are only safe when the 
+	 * same relation isn't written concurrently. In this mode, the relation batches of a config item are always 
+	 * scheduled so that this doesn't happen (see {@link CyRelationLoadingProcessor#getEndpointPartitions()}), 
+	 * but there is no such coordination between different config items running in parallel, or different 
+	 * loaders: if they map the same relations, they might create duplicates.</p>
+	 * 
+	 * @see uk.ac.rothamsted.kg.rdf2pg.neo4j.load.SimpleCyLoader#getUpsertMode()
+	 */
+	public boolean isUpsertMode ()
+	{
+		return upsertMode;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jUpsertMode" )
+	public void setUpsertMode ( boolean upsertMode )
+	{
+		this.upsertMode = upsertMode;
+	}
+
+	/**
+	 * <p>If true, {@link #writeRows(String, Map)} sends the data asynchronously, so that the loading 
+	 * handlers can go ahead with fetching and preparing the next batch while the previous one is being written. 
+	 * This overlaps the RDF extraction and the Neo4j writes without the need for more threads.</p>
+	 * 
+	 * <p>The handlers wait for the pending writes at the end of each loading phase, see {@link #flushWrites()}. 
+	 * This is disabled for the relations when they're scheduled by 
+	 * {@link CyRelationLoadingProcessor#getEndpointPartitions() endpoint partitions}, including in 
+	 * {@link #isUpsertMode() upsert mode}. Default is false.</p>
+	 * 
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#runCypherAsync(String, Object...)
+	 */
+	public boolean isAsyncWrites ()
+	{
+		return asyncWrites;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jAsyncWrites" )
+	public void setAsyncWrites ( boolean asyncWrites )
+	{
+		this.asyncWrites = asyncWrites;
+	}
+
+	/**
+	 * <p>If &gt; 0, the max no. of rows (ie, nodes or relations) that {@link #writeRows(String, Map)} sends in 
+	 * a single transaction. This allows for tuning the transaction size independently of the batch size 
+	 * (which is also the unit of work for the RDF extraction).</p>
+	 * 
+	 * <p>Default is -1, which means one transaction per batch.</p>
+	 */
+	public int getTxMaxRows ()
+	{
+		return txMaxRows;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jTxMaxRows" )
+	public void setTxMaxRows ( int txMaxRows )
+	{
+		this.txMaxRows = txMaxRows;
+	}
+
+	/**
+	 * <p>If &gt; 0, {@link #writeRows(String, Map, Consumer)} doesn't send the rows straight away, but it buffers
+	 * them per Cypher statement (ie, per label set for the nodes and per type for the relations), across the 
+	 * batches, and it sends a statement's buffer when it reaches this no. of rows, or when it gets older than
+	 * {@link #getCoalesceMaxAge()}. Each full buffer is sent in its own transaction(s).</p>
+	 * 
+	 * <p>With heterogeneous data, the rows of a batch are split among many statements, each carrying a few
+	 * rows, this option allows for sending fewer statements, with larger payloads. Note that the batches that 
+	 * give rows to a buffer aren't the ones that send it, which would make the 
+	 * {@link CyRelationLoadingProcessor#getEndpointPartitions() relation endpoint partitions} useless, so 
+	 * the coalescing is disabled for the relations when the latter are used (including in 
+	 * {@link #isUpsertMode() upsert mode}).</p>
+	 * 
+	 * <p>The remaining rows are sent by {@link #flushWrites()}, at the end of each loading phase. 
+	 * Default is -1, ie, no coalescing.</p>
+	 */
+	public int getCoalesceRows ()
+	{
+		return coalesceRows;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jCoalesceRows" )
+	public void setCoalesceRows ( int coalesceRows )
+	{
+		this.coalesceRows = coalesceRows;
+	}
+
+	/**
+	 * The max time a {@link #getCoalesceRows() coalescing buffer} waits before being sent, in ms. This is checked
+	 * when new rows arrive. Default is 5000, a value &lt;= 0 means no time limit.
+	 */
+	public long getCoalesceMaxAge ()
+	{
+		return coalesceMaxAge;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jCoalesceMaxAge" )
+	public void setCoalesceMaxAge ( long coalesceMaxAge )
+	{
+		this.coalesceMaxAge = coalesceMaxAge;
+	}
+
+	/**
+	 * <p>If &gt; 0, the loading handlers wrap their UNWIND statements into <code>CALL { ... } IN TRANSACTIONS OF 
+	 * n ROWS</code> (see {@link #buildUnwindCypher(String, String, String)}), so that Neo4j splits the rows 
+	 * into transactions of this size on the server side. This allows for sending large parameter lists (eg, 
+	 * together with {@link #getCoalesceRows()}) with few round trips, which is useful when the network latency
+	 * is high.</p>
+	 * 
+	 * <p>Such statements must run in auto-commit transactions, so in this mode each statement is sent on its own,
+	 * synchronously, and {@link #getTxMaxRows()}, {@link #isAsyncWrites()}, {@link #getRejectsPath()} and the
+	 * {@link #getNodeIdCache() node ID cache} don't apply. Part of the rows of a failed statement might be 
+	 * committed already, so failed statements are re-attempted (see {@link #getRetryPolicy()}) only in 
+	 * {@link #isUpsertMode() upsert mode}, where re-running them doesn't duplicate anything. Else, the errors
+	 * are reported straight away. This requires Neo4j &gt;= 4.4.</p>
+	 * 
+	 * <p>This can be set per config item, see {@link uk.ac.rothamsted.kg.rdf2pg.neo4j.load.Neo4jConfigItem}. 
+	 * Default is -1, ie, the client-side transactions are used.</p>
+	 */
+	public int getCallInTransactionsRows ()
+	{
+		return callInTransactionsRows;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jCallInTransactionsRows" )
+	public void setCallInTransactionsRows ( int callInTransactionsRows )
+	{
+		this.callInTransactionsRows = callInTransactionsRows;
+	}
+
+	/**
+	 * If not null and {@link NodeIdCache#isEnabled() enabled}, the loading handlers use this to record the node
+	 * IDs and to match the relation endpoints by ID. The Spring-managed instance is shared by all the config 
+	 * items. Default is null.
+	 */
+	public NodeIdCache getNodeIdCache ()
+	{
+		return nodeIdCache;
+	}
+
+	@Autowired ( required = false )
+	public void setNodeIdCache ( NodeIdCache nodeIdCache )
+	{
+		this.nodeIdCache = nodeIdCache;
+	}
+
+	/**
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#getMaxAsyncTransactions()
+	 */
+	public int getMaxAsyncTransactions ()
+	{
+		return delegateMgr.getMaxAsyncTransactions ();
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jMaxAsyncTransactions" )
+	public void setMaxAsyncTransactions ( int maxAsyncTransactions )
+	{
+		delegateMgr.setMaxAsyncTransactions ( maxAsyncTransactions );
+	}
+
+	/**
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#getRetryPolicy()
+	 */
+	public RetryPolicy getRetryPolicy ()
+	{
+		return delegateMgr.getRetryPolicy ();
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jRetryPolicy" )
+	public void setRetryPolicy ( RetryPolicy retryPolicy )
+	{
+		delegateMgr.setRetryPolicy ( retryPolicy );
+	}
+
+	/**
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#getTxTimeout()
+	 */
+	public long getTxTimeout ()
+	{
+		return delegateMgr.getTxTimeout ();
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jTxTimeout" )
+	public void setTxTimeout ( long txTimeout )
+	{
+		delegateMgr.setTxTimeout ( txTimeout );
+	}
+
+	/**
+	 * @see uk.ac.rothamsted.neo4j.utils.Neo4jDataManager#getRejectsPath()
+	 */
+	public String getRejectsPath ()
+	{
+		Path result = delegateMgr.getRejectsPath ();
+		return result == null ? null : result.toString ();
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jRejectsPath" )
+	public void setRejectsPath ( String rejectsPath )
+	{
+		delegateMgr.setRejectsPath ( rejectsPath == null ? null : Paths.get ( rejectsPath ) );
+	}
+
 	/**
 	 * TODO: requires refactoring with interface extraction 
 	 */
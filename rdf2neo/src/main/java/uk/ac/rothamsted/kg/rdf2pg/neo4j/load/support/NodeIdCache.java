@@ -0,0 +1,254 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>Maps node IRIs to the Neo4j IDs of the corresponding nodes, so that the relation loading can match the
+ * relation endpoints by ID, rather than looking up their IRIs in the default label index, which is the
+ * most expensive part of creating relations.</p>
+ *
+ * <p>The IDs are captured by {@link CyNodeLoadingHandler} from the node creation statements and used by
+ * {@link CyRelationLoadingHandler}. When an IRI isn't here (eg, the node was loaded by a previous run, or
+ * the cache is full), the relation handler falls back to the IRI lookup. The same happens for IRIs that are
+ * mapped to more than one node.</p>
+ *
+ * <p>In order to keep the memory low and out of the Java heap, we don't store the IRIs, but a 128-bit
+ * fingerprint of them, and the entries are kept in off-heap open-addressing hash tables, 24 bytes per
+ * entry (plus the free slots). The chance that two IRIs have the same fingerprint is negligible (about
+ * 10<sup>-20</sup> with 10<sup>9</sup> IRIs).</p>
+ *
+ * <p>This is a singleton, shared by all the config items of a loading run, since relations of a config item
+ * can refer to nodes from another one. The IDs are only valid within a single load and only if no node is 
+ * deleted meanwhile, since Neo4j reuses the IDs of deleted nodes. Hence, this is {@link #reset() reset} at 
+ * the begin of every load, by {@link uk.ac.rothamsted.kg.rdf2pg.neo4j.load.MultiConfigNeo4jLoader} or by
+ * {@link uk.ac.rothamsted.kg.rdf2pg.neo4j.load.SimpleCyLoader}, when it's used standalone. If you use it
+ * in other ways, you need to reset it yourself, and you must not delete nodes from the target database 
+ * while loading. The cache is disabled by default, see {@link #getMaxSize()}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@Component
+public class NodeIdCache
+{
+	private static final int SEGMENT_BITS = 8;
+	private static final int MIN_SEGMENT_SLOTS = 1 << 10;
+	/** Keeps a segment within the 2GB limit of a {@link ByteBuffer} */
+	private static final int MAX_SEGMENT_SLOTS = 1 << 26;
+	/** Marks IRIs that were seen with more than one ID */
+	private static final long AMBIGUOUS_ID = -2;
+
+	/**
+	 * An open-addressing hash table, with 3 longs per slot: the two fingerprint halves and the ID.
+	 * Empty slots have 0 as first fingerprint half, which we never use for actual fingerprints.
+	 */
+	private static class Segment
+	{
+		private LongBuffer slots = null;
+		private int size = 0;
+
+		synchronized long get ( long fp1, long fp2 )
+		{
+			if ( slots == null ) return -1;
+			int mask = slots.capacity () / 3 - 1;
+			for ( int i = (int) fp1 & mask; ; i = ( i + 1 ) & mask )
+			{
+				long slotFp1 = slots.get ( i * 3 );
+				if ( slotFp1 == 0 ) return -1;
+				if ( slotFp1 == fp1 && slots.get ( i * 3 + 1 ) == fp2 ) return slots.get ( i * 3 + 2 );
+			}
+		}
+
+		/**
+		 * @return true if a new entry was added, false if the fingerprint was already there or the segment is
+		 *         full
+		 */
+		synchronized boolean put ( long fp1, long fp2, long id )
+		{
+			if ( slots == null ) slots = allocate ( MIN_SEGMENT_SLOTS );
+			else if ( size >= slots.capacity () / 3 * 3 / 4 )
+			{
+				if ( slots.capacity () / 3 >= MAX_SEGMENT_SLOTS ) return false;
+				rehash ();
+			}
+
+			int mask = slots.capacity () / 3 - 1;
+			for ( int i = (int) fp1 & mask; ; i = ( i + 1 ) & mask )
+			{
+				long slotFp1 = slots.get ( i * 3 );
+				if ( slotFp1 == 0 )
+				{
+					slots.put ( i * 3, fp1 );
+					slots.put ( i * 3 + 1, fp2 );
+					slots.put ( i * 3 + 2, id );
+					size++;
+					return true;
+				}
+				if ( slotFp1 != fp1 || slots.get ( i * 3 + 1 ) != fp2 ) continue;
+
+				if ( slots.get ( i * 3 + 2 ) != id ) slots.put ( i * 3 + 2, AMBIGUOUS_ID );
+				return false;
+			}
+		}
+
+		private void rehash ()
+		{
+			LongBuffer oldSlots = slots;
+			slots = allocate ( oldSlots.capacity () / 3 * 2 );
+			int mask = slots.capacity () / 3 - 1;
+			for ( int j = 0; j < oldSlots.capacity (); j += 3 )
+			{
+				long fp1 = oldSlots.get ( j );
+				if ( fp1 == 0 ) continue;
+				int i = (int) fp1 & mask;
+				while ( slots.get ( i * 3 ) != 0 ) i = ( i + 1 ) & mask;
+				slots.put ( i * 3, fp1 );
+				slots.put ( i * 3 + 1, oldSlots.get ( j + 1 ) );
+				slots.put ( i * 3 + 2, oldSlots.get ( j + 2 ) );
+			}
+		}
+
+		private static LongBuffer allocate ( int nslots )
+		{
+			// Direct buffers are zeroed, ie, all slots are empty
+			return ByteBuffer.allocateDirect ( nslots * 3 * Long.BYTES )
+				.order ( ByteOrder.nativeOrder () )
+				.asLongBuffer ();
+		}
+	}
+
+	private volatile Segment[] segments = newSegments ();
+	private final AtomicLong size = new AtomicLong ();
+	private long maxSize = 0;
+	private volatile boolean isFullReported = false;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * Records that the node with this IRI has this ID. If the IRI is already associated to a different ID,
+	 * it's marked as ambiguous and {@link #get(String)} won't return any ID for it. Does nothing if the cache
+	 * is disabled or full.
+	 */
+	public void put ( String iri, long id )
+	{
+		if ( !isEnabled () ) return;
+
+		if ( size.get () >= maxSize ) {
+			reportFull ();
+			return;
+		}
+
+		long fp1 = fingerprint ( iri, 0xcbf29ce484222325L, 0x100000001b3L );
+		long fp2 = fingerprint ( iri, 0x84222325cbf29ce4L, 0x9e3779b97f4a7c15L );
+		if ( fp1 == 0 ) fp1 = 1;
+
+		Segment segment = segments [ (int) ( fp2 >>> ( 64 - SEGMENT_BITS ) ) ];
+		if ( segment.put ( fp1, fp2, id ) ) size.incrementAndGet ();
+		else if ( segment.get ( fp1, fp2 ) == -1 ) reportFull ();
+	}
+
+	/**
+	 * @return the ID of the node with this IRI, or -1 if it's unknown (or ambiguous).
+	 */
+	public long get ( String iri )
+	{
+		if ( size.get () == 0 ) return -1;
+
+		long fp1 = fingerprint ( iri, 0xcbf29ce484222325L, 0x100000001b3L );
+		long fp2 = fingerprint ( iri, 0x84222325cbf29ce4L, 0x9e3779b97f4a7c15L );
+		if ( fp1 == 0 ) fp1 = 1;
+
+		long result = segments [ (int) ( fp2 >>> ( 64 - SEGMENT_BITS ) ) ].get ( fp1, fp2 );
+		return result < 0 ? -1 : result;
+	}
+
+	/**
+	 * Forgets all the IDs and releases the memory (well, it makes it available for the GC, which is the
+	 * way the off-heap buffers are released).
+	 */
+	public void reset ()
+	{
+		segments = newSegments ();
+		size.set ( 0 );
+		isFullReported = false;
+	}
+
+	/**
+	 * The no. of IRIs in the cache.
+	 */
+	public long size ()
+	{
+		return size.get ();
+	}
+
+	public boolean isEnabled ()
+	{
+		return maxSize > 0;
+	}
+
+	/**
+	 * The max no. of IRIs that this cache can hold, each taking 24-48 bytes of off-heap memory, depending on
+	 * the hash tables' fill level. When the cache is full, the new IRIs aren't recorded anymore and the
+	 * corresponding relations are loaded with the IRI lookup.
+	 *
+	 * Default is 0, which disables the cache. If you enable it, ensure that the JVM has enough direct memory
+	 * (<code>-XX:MaxDirectMemorySize</code>).
+	 */
+	public long getMaxSize ()
+	{
+		return maxSize;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "neo4jNodeIdCacheMaxSize" )
+	public void setMaxSize ( long maxSize )
+	{
+		this.maxSize = maxSize;
+	}
+
+
+	private void reportFull ()
+	{
+		if ( isFullReported ) return;
+		isFullReported = true;
+		log.warn (
+			"The Neo4j node ID cache is full ({} IRIs), further relation endpoints will be matched by IRI",
+			size.get ()
+		);
+	}
+
+	private static Segment[] newSegments ()
+	{
+		Segment[] result = new Segment [ 1 << SEGMENT_BITS ];
+		for ( int i = 0; i < result.length; i++ ) result [ i ] = new Segment ();
+		return result;
+	}
+
+	/**
+	 * An FNV-1a-like hash, parameterised by the initial value and the multiplier, followed by the Murmur3
+	 * finaliser. Two instances with different parameters give us the 128-bit fingerprint.
+	 */
+	private static long fingerprint ( String s, long seed, long multiplier )
+	{
+		long h = seed;
+		for ( int i = 0; i < s.length (); i++ )
+			h = ( h ^ s.charAt ( i ) ) * multiplier;
+
+		h ^= s.length ();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,162 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.csv.support.Neo4jCsvDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
+import uk.ac.rothamsted.kg.rdf2pg.test.DataTestUtils;
+
+/**
+ * Tests for {@link MultiConfigNeo4jCsvExporter}. These don't need any Neo4j server.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class Neo4jCsvExportTest
+{
+	@BeforeClass
+	public static void initTDB ()
+	{
+		DataTestUtils.initDBpediaDataSet ();
+	}
+
+	@Test
+	public void testSpringMultiConfig () throws IOException
+	{
+		Path outDir = Paths.get ( "target/neo4j-csv-export" );
+		
+		// Same config as the Neo4j loader
+		try ( 
+			ConfigurableApplicationContext beanCtx = new ClassPathXmlApplicationContext ( "multi_config.xml" );
+			var exporter = MultiConfigPGMaker.getSpringInstance ( beanCtx, MultiConfigNeo4jCsvExporter.class );
+		)
+		{
+			exporter.export ( DataTestUtils.TDB_PATH, outDir.toString () );
+		}
+		
+		List<String> args = Files.readAllLines ( outDir.resolve ( Neo4jCsvDataManager.IMPORT_ARGS_FILE_NAME ) );
+		assertTrue ( "No --id-type in the args file!", args.contains ( "--id-type=string" ) );
+
+		List<String[]> nodeFiles = getFileArgs ( args, "--nodes=" );
+		assertTrue ( "No nodes exported!", !nodeFiles.isEmpty () );
+		long nodesCount = 0;
+		for ( String[] files: nodeFiles )
+		{
+			String header = Files.readString ( Paths.get ( files [ 0 ] ) );
+			assertTrue ( "Bad node header!", header.startsWith ( "iri:ID(iri),:LABEL" ) );
+			nodesCount += Files.lines ( Paths.get ( files [ 1 ] ) ).count ();
+		}
+		assertTrue ( "No node rows exported!", nodesCount > 0 );
+		
+		List<String[]> relFiles = getFileArgs ( args, "--relationships=" );
+		assertTrue ( "No relations exported!", !relFiles.isEmpty () );
+		for ( String[] files: relFiles )
+		{
+			String header = Files.readString ( Paths.get ( files [ 0 ] ) );
+			assertTrue ( "Bad relation header!", header.startsWith ( ":START_ID(iri),:END_ID(iri),:TYPE" ) );
+		}
+	}
+	
+	/**
+	 * Tests that a new part is started with a new column type.
+	 */
+	@Test
+	public void testColumnWidening () throws IOException
+	{
+		Path outDir = Paths.get ( "target/neo4j-csv-widening" );
+		
+		var csvMgr = new Neo4jCsvDataManager ();
+		csvMgr.setOutputDir ( outDir.toString () );
+		csvMgr.setArrayDelimiter ( ';' );
+		
+		var labels = new TreeSet<> ( List.of ( "Person" ) );
+		csvMgr.writeNode ( labels, "ex:1", Map.of ( "age", 10L ) );
+		csvMgr.writeNode ( labels, "ex:2", Map.of ( "age", 20 ) );
+		csvMgr.writeNode ( labels, "ex:3", Map.of ( "age", "thirty", "name", "Foo \"Bar\"" ) );
+		csvMgr.writeNode ( labels, "ex:4", Map.of ( "age", new Object[] { 1L, 2.5 } ) );
+		csvMgr.finish ();
+		
+		List<String[]> nodeFiles = getFileArgs ( 
+			Files.readAllLines ( outDir.resolve ( Neo4jCsvDataManager.IMPORT_ARGS_FILE_NAME ) ), "--nodes="
+		);
+		assertEquals ( "Wrong no. of parts!", 3, nodeFiles.size () );
+		
+		assertEquals ( "Wrong 1st header!", 
+			"iri:ID(iri),:LABEL,\"age:long\"", Files.readString ( Paths.get ( nodeFiles.get ( 0 ) [ 0 ] ) ).trim () 
+		);
+		assertEquals ( "Wrong 1st part size!", 2, Files.readAllLines ( Paths.get ( nodeFiles.get ( 0 ) [ 1 ] ) ).size () );
+		assertEquals ( "Wrong 3rd header!", 
+			"iri:ID(iri),:LABEL,\"age:string[]\",\"name:string\"", 
+			Files.readString ( Paths.get ( nodeFiles.get ( 2 ) [ 0 ] ) ).trim () 
+		);
+		assertEquals ( "Wrong array value!", 
+			"\"ex:4\",\"Person\",\"1;2.5\",", Files.readString ( Paths.get ( nodeFiles.get ( 2 ) [ 1 ] ) ).trim () 
+		);
+		
+		String row3 = Files.readString ( Paths.get ( nodeFiles.get ( 1 ) [ 1 ] ) );
+		assertTrue ( "Quotes not escaped!", row3.contains ( "\"Foo \"\"Bar\"\"\"" ) );
+	}
+	
+	/**
+	 * Tests that the files closed by the open files limit are correctly reopened, plus the default delimiter
+	 * options.
+	 */
+	@Test
+	public void testMaxOpenFiles () throws IOException
+	{
+		Path outDir = Paths.get ( "target/neo4j-csv-max-open" );
+		
+		var csvMgr = new Neo4jCsvDataManager ();
+		csvMgr.setOutputDir ( outDir.toString () );
+		csvMgr.setMaxOpenFiles ( 1 );
+		
+		var persons = new TreeSet<> ( List.of ( "Person" ) );
+		var places = new TreeSet<> ( List.of ( "Place" ) );
+		csvMgr.writeNode ( persons, "ex:1", Map.of ( "name", "Alice" ) );
+		csvMgr.writeNode ( places, "ex:2", Map.of ( "name", "Harpenden" ) );
+		csvMgr.writeNode ( persons, "ex:3", Map.of ( "name", "Bob" ) );
+		csvMgr.writeNode ( places, "ex:4", Map.of ( "name", new Object[] { "a", "b\u001Fc" } ) );
+		csvMgr.finish ();
+		
+		List<String> args = Files.readAllLines ( outDir.resolve ( Neo4jCsvDataManager.IMPORT_ARGS_FILE_NAME ) );
+		assertTrue ( "No --array-delimiter in the args file!", args.contains ( "--array-delimiter=U+001F" ) );
+		assertTrue ( "No --skip-bad-relationships in the args file!", args.contains ( "--skip-bad-relationships=true" ) );
+
+		List<String[]> nodeFiles = getFileArgs ( args, "--nodes=" );
+		assertEquals ( "Wrong no. of parts!", 3, nodeFiles.size () );
+
+		List<String> personRows = Files.readAllLines ( Paths.get ( nodeFiles.get ( 0 ) [ 1 ] ) );
+		assertEquals ( "Wrong rows after reopening!", 
+			List.of ( "\"ex:1\",\"Person\",\"Alice\"", "\"ex:3\",\"Person\",\"Bob\"" ), personRows 
+		);
+		
+		// The array value has started a new part
+		assertEquals ( "Delimiter in the array elements not replaced!", 
+			"\"ex:4\",\"Place\",\"a\u001Fb c\"", Files.readString ( Paths.get ( nodeFiles.get ( 2 ) [ 1 ] ) ).trim () 
+		);
+	}
+	
+	private static List<String[]> getFileArgs ( List<String> args, String option )
+	{
+		return args.stream ()
+			.filter ( a -> a.startsWith ( option ) )
+			.map ( a -> a.substring ( option.length () ).split ( "," ) )
+			.collect ( Collectors.toList () );
+	}
+}
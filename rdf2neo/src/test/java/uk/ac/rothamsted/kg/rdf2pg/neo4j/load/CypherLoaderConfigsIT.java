@@ -0,0 +1,184 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyNodeLoadingHandler;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyNodeLoadingProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingHandler;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.Neo4jDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.NodeIdCache;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.test.NeoTestUtils;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGMakerProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.test.DataTestUtils;
+
+/**
+ * Checks that the {@link SimpleCyLoader} writing options give the same results as the default options.
+ *
+ * This uses the small test data set, with small batches, so that batches, transactions and coalesced rows
+ * are split in multiple chunks anyway.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+@RunWith ( Parameterized.class )
+public class CypherLoaderConfigsIT
+{
+	private static long defaultNodesCount, defaultRelsCount;
+
+	private final boolean useVirtualThreads;
+	private final Consumer<Neo4jDataManager> neoMgrConfigurator;
+
+
+	@Parameters ( name = "{0}" )
+	public static List<Object[]> getConfigs ()
+	{
+		return List.of (
+			new Object[] { "virtual threads", true, (Consumer<Neo4jDataManager>) neoMgr -> neoMgr.setMaxSessions ( 2 ) },
+			new Object[] { "async writes", false, (Consumer<Neo4jDataManager>) neoMgr -> neoMgr.setAsyncWrites ( true ) },
+			new Object[] { "txMaxRows", false, (Consumer<Neo4jDataManager>) neoMgr -> neoMgr.setTxMaxRows ( 1 ) },
+			new Object[] { "async txMaxRows", false, (Consumer<Neo4jDataManager>) neoMgr -> {
+				neoMgr.setTxMaxRows ( 1 );
+				neoMgr.setAsyncWrites ( true );
+			}},
+			new Object[] { "coalesceRows", false, (Consumer<Neo4jDataManager>) neoMgr -> neoMgr.setCoalesceRows ( 3 ) },
+			new Object[] { "async coalesceRows", false, (Consumer<Neo4jDataManager>) neoMgr -> {
+				neoMgr.setCoalesceRows ( 3 );
+				neoMgr.setCoalesceMaxAge ( 1 );
+				neoMgr.setAsyncWrites ( true );
+			}},
+			new Object[] {
+				"callInTransactionsRows", false, (Consumer<Neo4jDataManager>) neoMgr -> neoMgr.setCallInTransactionsRows ( 1 )
+			},
+			new Object[] { "coalesced callInTransactionsRows", false, (Consumer<Neo4jDataManager>) neoMgr -> {
+				neoMgr.setCallInTransactionsRows ( 1 );
+				neoMgr.setCoalesceRows ( 3 );
+			}},
+			new Object[] { "node ID cache", false, (Consumer<Neo4jDataManager>) neoMgr -> {
+				var idCache = new NodeIdCache ();
+				idCache.setMaxSize ( 1000 );
+				neoMgr.setNodeIdCache ( idCache );
+			}}
+		);
+	}
+
+	public CypherLoaderConfigsIT (
+		String configName, boolean useVirtualThreads, Consumer<Neo4jDataManager> neoMgrConfigurator
+	)
+	{
+		this.useVirtualThreads = useVirtualThreads;
+		this.neoMgrConfigurator = neoMgrConfigurator;
+	}
+
+
+	/**
+	 * Loads with the defaults, to get the reference results.
+	 */
+	@BeforeClass
+	public static void initDefaults () throws Exception
+	{
+		DataTestUtils.initData ();
+		NeoTestUtils.initNeo ();
+		load ( false, neoMgr -> {} );
+
+		try ( Driver neoDriver = getDriver () )
+		{
+			defaultNodesCount = count ( neoDriver, "MATCH (n) RETURN COUNT(n)" );
+			defaultRelsCount = count ( neoDriver, "MATCH ()-[r]->() RETURN COUNT(r)" );
+		}
+		assertTrue ( "No nodes loaded with the defaults!", defaultNodesCount > 0 );
+		assertTrue ( "No relations loaded with the defaults!", defaultRelsCount > 0 );
+	}
+
+
+	@Test
+	public void testConfig () throws Exception
+	{
+		NeoTestUtils.initNeo ();
+		load ( useVirtualThreads, neoMgrConfigurator );
+
+		try ( Driver neoDriver = getDriver () )
+		{
+			assertEquals ( "Wrong no. of nodes!", defaultNodesCount, count ( neoDriver, "MATCH (n) RETURN COUNT(n)" ) );
+			assertEquals ( "Wrong no. of relations!", defaultRelsCount, count ( neoDriver, "MATCH ()-[r]->() RETURN COUNT(r)" ) );
+		}
+	}
+
+
+	private static void load ( boolean useVirtualThreads, Consumer<Neo4jDataManager> neoMgrConfigurator )
+		throws Exception
+	{
+		try (
+			var neoDriver = getDriver ();
+			var cyloader = new SimpleCyLoader ();
+			var rdfMgr = new RdfDataManager ( DataTestUtils.TDB_PATH );
+		)
+		{
+			Neo4jDataManager neoMgr = new Neo4jDataManager ( neoDriver );
+			neoMgrConfigurator.accept ( neoMgr );
+
+			CyNodeLoadingHandler cyNodeHandler = new CyNodeLoadingHandler ();
+			CyRelationLoadingHandler cyRelHandler = new CyRelationLoadingHandler ();
+
+			cyNodeHandler.setLabelsSparql ( DataTestUtils.SPARQL_NODE_LABELS );
+			cyNodeHandler.setNodePropsSparql ( DataTestUtils.SPARQL_NODE_PROPS );
+			cyNodeHandler.setRdfDataManager ( rdfMgr );
+			cyNodeHandler.setNeo4jDataManager ( neoMgr );
+
+			cyRelHandler.setRelationTypesSparql ( DataTestUtils.SPARQL_REL_TYPES );
+			cyRelHandler.setRelationPropsSparql ( DataTestUtils.SPARQL_REL_PROPS );
+			cyRelHandler.setRdfDataManager ( rdfMgr );
+			cyRelHandler.setNeo4jDataManager ( neoMgr );
+
+			CyNodeLoadingProcessor cyNodeProc = new CyNodeLoadingProcessor ();
+			cyNodeProc.setNodeIrisSparql ( DataTestUtils.SPARQL_NODE_IRIS );
+			cyNodeProc.setBatchJob ( cyNodeHandler );
+
+			CyRelationLoadingProcessor cyRelProc = new CyRelationLoadingProcessor ();
+			cyRelProc.setConsumer ( cyRelHandler );
+
+			for ( PGMakerProcessor<?, ?> proc: List.of ( cyNodeProc, cyRelProc ) )
+			{
+				proc.setMaxBatchSize ( 2 );
+				if ( !useVirtualThreads ) continue;
+				proc.setUseVirtualThreads ( true );
+				proc.setMaxInFlightBatches ( 4 );
+			}
+
+			cyloader.setPGNodeMaker ( cyNodeProc );
+			cyloader.setPGRelationMaker ( cyRelProc );
+
+			cyloader.make ( DataTestUtils.TDB_PATH );
+		}
+	}
+
+	private static Driver getDriver ()
+	{
+		return GraphDatabase.driver (
+			NeoTestUtils.NEO_TEST_URL,
+			AuthTokens.basic ( NeoTestUtils.NEO_TEST_USER, NeoTestUtils.NEO_TEST_PWD )
+		);
+	}
+
+	private static long count ( Driver neoDriver, String cypher )
+	{
+		try ( var session = neoDriver.session () ) {
+			return session.run ( cypher ).single ().get ( 0 ).asLong ();
+		}
+	}
+}
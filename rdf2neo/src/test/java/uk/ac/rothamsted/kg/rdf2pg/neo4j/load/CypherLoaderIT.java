@@ -1,9 +1,16 @@
 package uk.ac.rothamsted.kg.rdf2pg.neo4j.load;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,6 +19,8 @@ import org.junit.Test;
 import org.neo4j.driver.AuthTokens;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
@@ -22,9 +31,11 @@ import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyNodeLoadingProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingHandler;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.CyRelationLoadingProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.Neo4jDataManager;
+import uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support.NodeIdCache;
 import uk.ac.rothamsted.kg.rdf2pg.neo4j.test.NeoTestUtils;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.PropertyGraphMaker;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGMakerProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 import uk.ac.rothamsted.kg.rdf2pg.test.DataTestUtils;
 import uk.ac.rothamsted.neo4j.utils.test.CypherTester;
@@ -41,6 +52,8 @@ import uk.ac.rothamsted.neo4j.utils.test.CypherTester;
  */
 public class CypherLoaderIT
 {
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
 	@BeforeClass
 	public static void initTDB ()
 	{
@@ -52,8 +65,62 @@ public class CypherLoaderIT
 		NeoTestUtils.initNeo ();
 	}
 	
+	/**
+	 * A smoke test on the DBpedia data. The writing options are tested on smaller data by 
+	 * {@link CypherLoaderConfigsIT}.
+	 */
 	@Test
 	public void testLoading () throws Exception
+	{
+		loadDBpedia ();
+		assertTrue ( "No nodes loaded!", count ( "MATCH (n) RETURN COUNT(n)" ) > 0 );
+		assertTrue ( "No relations loaded!", count ( "MATCH ()-[r]->() RETURN COUNT(r)" ) > 0 );
+	}
+	
+	
+	/**
+	 * Checks that {@link Neo4jDataManager#getRejectsPath()} isolates a bad row and commits the others, both in
+	 * synchronous and asynchronous mode. 
+	 */
+	@Test
+	public void testRejects () throws Exception
+	{
+		for ( boolean isAsync: new boolean[] { false, true } )
+		{
+			NeoTestUtils.initNeo ();
+			Path rejectsPath = Paths.get ( "target", "test-rejects-" + isAsync + ".tsv" );
+			Files.deleteIfExists ( rejectsPath );
+			
+			try ( 
+				var neoDriver = GraphDatabase.driver ( 
+					NeoTestUtils.NEO_TEST_URL, 
+					AuthTokens.basic ( NeoTestUtils.NEO_TEST_USER, NeoTestUtils.NEO_TEST_PWD )
+				);
+			) 
+			{
+				var neoMgr = new Neo4jDataManager ( neoDriver );
+				neoMgr.setAsyncWrites ( isAsync );
+				neoMgr.setRejectsPath ( rejectsPath.toString () );
+				
+				List<Map<String, Object>> rows = new ArrayList<> ();
+				for ( int i = 0; i < 10; i++ )
+					// Nested maps aren't valid property values
+					rows.add ( i == 6 ? Map.of ( "iri", "row" + i, "bad", Map.of ( "a", 1 ) ) : Map.of ( "iri", "row" + i ) );
+				
+				neoMgr.writeRows ( "rows", Map.of ( "UNWIND $rows AS row CREATE (n:RejectsTest) SET n = row", rows ) );
+				neoMgr.flushWrites ();
+				
+				assertEquals ( "Good rows not committed!", 9, count ( neoDriver, "MATCH (n:RejectsTest) RETURN COUNT(n)" ) );
+				assertEquals ( "Bad row not reported!", 1, neoMgr.getDelegateMgr ().getRejectedRowsCount () );
+
+				List<String> rejects = Files.readAllLines ( rejectsPath );
+				assertEquals ( "Wrong no. of rejected rows!", 1, rejects.size () );
+				assertTrue ( "Wrong rejected row!", rejects.get ( 0 ).contains ( "row6" ) );
+			}
+		}
+	}
+	
+	private void loadDBpedia () throws Exception
 	{
 		try (
 			var neoDriver = GraphDatabase.driver ( 
@@ -92,7 +159,6 @@ public class CypherLoaderIT
 			cyloader.setPGRelationMaker ( cyRelProc );
 			
 			cyloader.make ( DataTestUtils.TDB_PATH );
-			// TODO: test!
 			
 		} // try neoDriver
 	}
@@ -210,6 +276,58 @@ public class CypherLoaderIT
 	}	
 
 	
+	/**
+	 * Tests {@link MultiConfigNeo4jLoader#getUpsertMode()}, by loading the same data twice.
+	 */
+	@Test
+	public void testUpsertMode ()
+	{
+		try ( 
+			ConfigurableApplicationContext beanCtx = new ClassPathXmlApplicationContext ( "multi_config.xml" );
+			MultiConfigNeo4jLoader mloader = MultiConfigNeo4jLoader.getSpringInstance ( beanCtx, MultiConfigNeo4jLoader.class );				
+		)
+		{
+			mloader.setUpsertMode ( true );
+			Driver neoDriver = beanCtx.getBean ( Driver.class );
+			var cytest = new CypherTester ( neoDriver );
+			
+			mloader.load ( DataTestUtils.TDB_PATH );
+			long nodesCount = count ( neoDriver, "MATCH (n) RETURN COUNT(n)" );
+			long relsCount = count ( neoDriver, "MATCH ()-[r]->() RETURN COUNT(r)" );
+			
+			mloader.load ( DataTestUtils.TDB_PATH );
+			assertEquals ( "Nodes duplicated by upsert!", nodesCount, count ( neoDriver, "MATCH (n) RETURN COUNT(n)" ) );
+			assertEquals ( "Relations duplicated by upsert!", relsCount, count ( neoDriver, "MATCH ()-[r]->() RETURN COUNT(r)" ) );
+			
+			assertTrue ( "Duplicated node IRIs after upsert!", cytest.ask ( 
+				"MATCH (n:Resource) WITH n.iri AS iri, COUNT(n) AS ct WHERE ct > 1\n" +
+				"RETURN COUNT(iri) = 0"
+			));
+		}
+	}	
+
+	
+	private long count ( Driver neoDriver, String cypher )
+	{
+		try ( var session = neoDriver.session () ) {
+			return session.run ( cypher ).single ().get ( 0 ).asLong ();
+		}
+	}
+
+	private long count ( String cypher )
+	{
+		try ( 
+			var neoDriver = GraphDatabase.driver ( 
+				NeoTestUtils.NEO_TEST_URL, 
+				AuthTokens.basic ( NeoTestUtils.NEO_TEST_USER, NeoTestUtils.NEO_TEST_PWD )
+			);
+		) 
+		{
+			return count ( neoDriver, cypher );
+		}
+	}
+	
+	
 	@Test
 	public void testNeoIndexing ()
 	{
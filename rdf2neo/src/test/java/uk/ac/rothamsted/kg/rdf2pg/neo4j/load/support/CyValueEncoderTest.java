@@ -0,0 +1,63 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.neo4j.driver.Value;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
+
+/**
+ * Tests for {@link CyValueEncoder}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class CyValueEncoderTest
+{
+	@Test
+	public void testEncodeNode ()
+	{
+		PGNode node = new PGNode ( "http://www.example.com/res/node1" );
+		node.addPropValue ( "name", "Node 1" );
+		node.addPropValue ( "score", 2.5 );
+		node.addPropValue ( "tag", "a" );
+		node.addPropValue ( "tag", "b" );
+
+		Map<String, Object> props = CyValueEncoder.encodeNode ( node ).asMap ();
+
+		assertEquals ( "Wrong no. of properties!", 4, props.size () );
+		assertEquals ( "Wrong iri!", node.getIri (), props.get ( "iri" ) );
+		assertEquals ( "Wrong name!", "Node 1", props.get ( "name" ) );
+		assertEquals ( "Wrong score!", 2.5, props.get ( "score" ) );
+		assertArrayEquals (
+			"Wrong multi-value property!", 
+			new Object[] { "a", "b" }, ( (List<?>) props.get ( "tag" ) ).stream ().sorted ().toArray ()
+		);
+	}
+
+	@Test
+	public void testEncodeRelation ()
+	{
+		PGRelation rel = new PGRelation ( "http://www.example.com/res/rel1" );
+		rel.setType ( "knows" );
+		rel.addPropValue ( "since", 2010L );
+
+		Value byIri = CyValueEncoder.encodeRelation ( rel, "http://ex/from", "http://ex/to" );
+		assertEquals ( "Wrong fromIri!", "http://ex/from", byIri.get ( "fromIri" ).asString () );
+		assertEquals ( "Wrong toIri!", "http://ex/to", byIri.get ( "toIri" ).asString () );
+		assertEquals ( "Wrong relation property!", 2010L, byIri.get ( "properties" ).get ( "since" ).asLong () );
+		assertEquals ( "Wrong relation iri!", rel.getIri (), byIri.get ( "properties" ).get ( "iri" ).asString () );
+
+		Value byId = CyValueEncoder.encodeRelation ( rel, 10, 20 );
+		assertEquals ( "Wrong fromId!", 10, byId.get ( "fromId" ).asLong () );
+		assertEquals ( "Wrong toId!", 20, byId.get ( "toId" ).asLong () );
+		assertEquals ( "Wrong relation property!", 2010L, byId.get ( "properties" ).get ( "since" ).asLong () );
+	}
+}
@@ -117,6 +117,34 @@ public class CypherHandlersIT
 	}
 	
 	
+	/**
+	 * Tests that the node loading created the 'iri' indexes, via {@link CypherSchemaManager}.
+	 */
+	@Test
+	public void testNodeIndexes () throws Exception
+	{
+		try (	
+			var neoDriver = GraphDatabase.driver ( 
+				NeoTestUtils.NEO_TEST_URL, 
+				AuthTokens.basic ( NeoTestUtils.NEO_TEST_USER, NeoTestUtils.NEO_TEST_PWD )
+			);
+		)
+		{
+			CypherTester tester = new CypherTester ( neoDriver );
+			for ( String label: new String[] { "TestNode", "SuperTestNode" } )
+				Assert.assertTrue (
+					"iri index not created for " + label + "!",
+					tester.ask ( 
+						"SHOW INDEXES YIELD labelsOrTypes, properties\n" 
+						+ "WHERE $label IN labelsOrTypes AND properties = ['iri']\n"
+						+ "RETURN COUNT(*) = 1",
+						"label", label
+					)
+				);
+		}
+	}
+	
+	
 	/**
 	 * Tests {@link CyRelationLoadingHandler} to see if relations are mapped from RDF and loaded into Neo4J.
 	 */
@@ -0,0 +1,131 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EndpointPartitionScheduler}. 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class EndpointPartitionSchedulerTest
+{
+	/**
+	 * Tracks the nodes used by the running batches and reports if two batches use the same node. 
+	 */
+	private static class ConflictsCheckingJob implements Consumer<Set<QuerySolution>>
+	{
+		final Set<String> busyNodes = ConcurrentHashMap.newKeySet ();
+		final Set<QuerySolution> doneRelations = ConcurrentHashMap.newKeySet ();
+		final AtomicInteger conflicts = new AtomicInteger ();
+		
+		@Override
+		public void accept ( Set<QuerySolution> relations )
+		{
+			Set<String> batchNodes = new HashSet<> ();
+			for ( QuerySolution rel: relations ) 
+			{
+				batchNodes.add ( rel.getResource ( "fromIri" ).getURI () );
+				batchNodes.add ( rel.getResource ( "toIri" ).getURI () );
+			}
+			for ( String node: batchNodes )
+				if ( !busyNodes.add ( node ) ) conflicts.incrementAndGet ();
+			try {
+				Thread.sleep ( 2 );
+			}
+			catch ( InterruptedException ex ) {
+				throw new IllegalStateException ( ex );
+			}
+			busyNodes.removeAll ( batchNodes );
+			doneRelations.addAll ( relations );
+		}
+	}
+	
+	@Test
+	public void testNoConflicts ()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool ( 8 );
+		var job = new ConflictsCheckingJob ();
+		var scheduler = new EndpointPartitionScheduler ( 16, Long.MAX_VALUE, 32, () -> 50, executor, job );
+		
+		Random rnd = new Random ( 123 );
+		int nrels = 20000;
+		for ( int i = 0; i < nrels; i++ )
+			scheduler.add ( relation ( i, rnd.nextInt ( 2000 ), rnd.nextInt ( 2000 ) ) );
+		scheduler.finish ();
+		executor.shutdown ();
+		
+		assertEquals ( "Concurrent batches touched the same nodes!", 0, job.conflicts.get () );
+		assertEquals ( "Wrong no. of relations processed!", nrels, job.doneRelations.size () );
+		assertEquals ( "Hub lane used without hubs!", 0, scheduler.getHubRelationsCount () );
+	}
+
+	@Test
+	public void testHubs ()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool ( 4 );
+		var job = new ConflictsCheckingJob ();
+		var scheduler = new EndpointPartitionScheduler ( 8, 100, 16, () -> 50, executor, job );
+		
+		Random rnd = new Random ( 123 );
+		int nrels = 5000;
+		for ( int i = 0; i < nrels; i++ )
+		{
+			// 1/5 of the relations point to the hub
+			int to = i % 5 == 0 ? 0 : 1 + rnd.nextInt ( 2000 );
+			scheduler.add ( relation ( i, 1 + rnd.nextInt ( 2000 ), to ) );
+		}
+		scheduler.finish ();
+		executor.shutdown ();
+		
+		assertEquals ( "Concurrent batches touched the same nodes!", 0, job.conflicts.get () );
+		assertEquals ( "Wrong no. of relations processed!", nrels, job.doneRelations.size () );
+		// The count-min sketch might also catch a few non-hub ones, but not many 
+		long hubRels = scheduler.getHubRelationsCount ();
+		assertTrue ( "Hub relations not detected (" + hubRels + ")!", hubRels >= nrels / 5 - 100 );
+		assertTrue ( "Too many hub relations (" + hubRels + ")!", hubRels <= nrels / 5 + 100 );
+	}
+	
+	@Test ( expected = IllegalStateException.class )
+	public void testBatchError ()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool ( 4 );
+		var scheduler = new EndpointPartitionScheduler ( 4, Long.MAX_VALUE, 8, () -> 10, executor, 
+			rels -> { throw new IllegalArgumentException ( "Test error" ); } 
+		);
+		try 
+		{
+			for ( int i = 0; i < 100; i++ )
+				scheduler.add ( relation ( i, i, i + 1 ) );
+			scheduler.finish ();
+		}
+		finally {
+			executor.shutdown ();
+		}
+	}
+	
+	private static QuerySolution relation ( int id, int from, int to )
+	{
+		var result = new QuerySolutionMap ();
+		result.add ( "iri", ResourceFactory.createResource ( "http://www.example.com/rel_" + id ) );
+		result.add ( "fromIri", ResourceFactory.createResource ( "http://www.example.com/node_" + from ) );
+		result.add ( "toIri", ResourceFactory.createResource ( "http://www.example.com/node_" + to ) );
+		return result;
+	}
+}
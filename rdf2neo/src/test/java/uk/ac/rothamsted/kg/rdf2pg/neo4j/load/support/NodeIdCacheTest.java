@@ -0,0 +1,71 @@
+package uk.ac.rothamsted.kg.rdf2pg.neo4j.load.support;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NodeIdCache}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class NodeIdCacheTest
+{
+	private static final String IRI_PREFIX = "http://www.example.com/resources/node_";
+
+	@Test
+	public void testPutGet ()
+	{
+		var cache = new NodeIdCache ();
+		cache.setMaxSize ( 1_000_000 );
+
+		// Enough to have the hash tables growing a few times
+		int n = 500_000;
+		for ( int i = 0; i < n; i++ ) cache.put ( IRI_PREFIX + i, i );
+
+		assertEquals ( "Wrong cache size!", n, cache.size () );
+		for ( int i = 0; i < n; i++ )
+			assertEquals ( "Wrong ID fetched!", i, cache.get ( IRI_PREFIX + i ) );
+		assertEquals ( "Unknown IRI found!", -1, cache.get ( IRI_PREFIX + "foo" ) );
+
+		// Same ID again doesn't change anything
+		cache.put ( IRI_PREFIX + 1, 1 );
+		assertEquals ( "Wrong ID after duplicated put!", 1, cache.get ( IRI_PREFIX + 1 ) );
+		assertEquals ( "Wrong cache size after duplicated put!", n, cache.size () );
+
+		cache.reset ();
+		assertEquals ( "Cache not reset!", -1, cache.get ( IRI_PREFIX + 1 ) );
+		assertEquals ( "Cache size not reset!", 0, cache.size () );
+	}
+
+	@Test
+	public void testAmbiguousIri ()
+	{
+		var cache = new NodeIdCache ();
+		cache.setMaxSize ( 100 );
+
+		cache.put ( IRI_PREFIX + 1, 1 );
+		cache.put ( IRI_PREFIX + 1, 2 );
+		cache.put ( IRI_PREFIX + 2, 3 );
+
+		assertEquals ( "Ambiguous IRI found!", -1, cache.get ( IRI_PREFIX + 1 ) );
+		assertEquals ( "Wrong ID next to the ambiguous one!", 3, cache.get ( IRI_PREFIX + 2 ) );
+	}
+
+	@Test
+	public void testMaxSize ()
+	{
+		var cache = new NodeIdCache ();
+		cache.put ( IRI_PREFIX + 1, 1 );
+		assertEquals ( "Disabled cache is storing IDs!", -1, cache.get ( IRI_PREFIX + 1 ) );
+
+		cache.setMaxSize ( 10 );
+		for ( int i = 0; i < 20; i++ ) cache.put ( IRI_PREFIX + i, i );
+
+		assertEquals ( "Max size not honoured!", 10, cache.size () );
+		assertEquals ( "Wrong ID before the max size!", 9, cache.get ( IRI_PREFIX + 9 ) );
+		assertEquals ( "ID stored after the max size!", -1, cache.get ( IRI_PREFIX + 10 ) );
+	}
+}
@@ -0,0 +1,95 @@
+package uk.ac.rothamsted.kg.rdf2pg.idconvert;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
+
+/**
+ * <p>A memoising wrapper of another IRI converter.</p>
+ * 
+ * <p>Converters are applied to every label, property name and relation type of every PG entity, while 
+ * the distinct IRIs they get are usually a few hundreds, so it makes sense to compute each conversion once. 
+ * Moreover, the results are interned, so that the same name is the same string instance in all 
+ * the entities.</p>
+ * 
+ * <p>The cache is bounded: when it reaches {@link #getMaxSize()}, new IRIs are no longer cached and are just
+ * passed to the base converter. That's to prevent memory leaks in case of bad usages (eg, a converter applied to 
+ * literal values). Lookups are lock-free.</p>
+ * 
+ * <p>{@link RdfDataManager} uses its converters through this class automatically (its getters still return
+ * the converters that were set).</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class CachingIri2IdConverter implements Function<String, String>
+{
+	public static final int DEFAULT_MAX_SIZE = 100_000;
+	
+	private final Function<String, String> baseConverter;
+	private final int maxSize;
+	
+	private final Map<String, String> cache = new ConcurrentHashMap<> ();
+	
+	public CachingIri2IdConverter ( Function<String, String> baseConverter, int maxSize )
+	{
+		this.baseConverter = baseConverter;
+		this.maxSize = maxSize;
+	}
+
+	public CachingIri2IdConverter ( Function<String, String> baseConverter )
+	{
+		this ( baseConverter, DEFAULT_MAX_SIZE );
+	}
+
+	/**
+	 * A wrapper of the base converter, which doesn't wrap it again if it's already an instance of this class, 
+	 * or if it's null.
+	 */
+	public static Function<String, String> wrap ( Function<String, String> baseConverter )
+	{
+		if ( baseConverter == null || baseConverter instanceof CachingIri2IdConverter ) return baseConverter;
+		return new CachingIri2IdConverter ( baseConverter );
+	}
+	
+	@Override
+	public String apply ( String iri )
+	{
+		if ( iri == null ) return baseConverter.apply ( null );
+		
+		String result = cache.get ( iri );
+		if ( result != null ) return result;
+		
+		result = baseConverter.apply ( iri );
+		if ( result == null ) return null;
+		result = result.intern ();
+		
+		// The size check is approximated in case of concurrent adds, which doesn't matter much.
+		if ( cache.size () < maxSize ) cache.putIfAbsent ( iri, result );
+		return result;
+	}
+
+	/**
+	 * The converter that does the actual job.
+	 */
+	public Function<String, String> getBaseConverter ()
+	{
+		return baseConverter;
+	}
+
+	public int getMaxSize ()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * The current no. of cached IRIs.
+	 */
+	public int size ()
+	{
+		return cache.size ();
+	}
+}
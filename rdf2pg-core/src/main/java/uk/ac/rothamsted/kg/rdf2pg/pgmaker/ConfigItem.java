@@ -1,5 +1,8 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker;
 
+import java.util.List;
+import java.util.Map;
+
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeHandler;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeMakeProcessor;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGRelationHandler;
@@ -18,10 +21,35 @@ public class ConfigItem<SM extends SimplePGMaker<?,?,?,?>>
 	private String name;
 	
 	private String nodeIrisSparql, labelsSparql, nodePropsSparql;
+	private String wideNodesSparql;
 	private String relationTypesSparql, relationPropsSparql;
 	
+	private String labelsPredicate;
+	private Map<String, String> nodePropsPredicates, relationPropsPredicates;
+	
+	private List<String> relationDependencies;
+	
 	public ConfigItem () {}
 
+	/**
+	 * Copies the mapping properties defined here from another item, possibly for a different kind of maker, eg, 
+	 * to use the same mappings with different targets.
+	 */
+	public ConfigItem ( ConfigItem<?> from ) 
+	{
+		this.name = from.getName ();
+		this.nodeIrisSparql = from.getNodeIrisSparql ();
+		this.labelsSparql = from.getLabelsSparql ();
+		this.nodePropsSparql = from.getNodePropsSparql ();
+		this.wideNodesSparql = from.getWideNodesSparql ();
+		this.relationTypesSparql = from.getRelationTypesSparql ();
+		this.relationPropsSparql = from.getRelationPropsSparql ();
+		this.labelsPredicate = from.getLabelsPredicate ();
+		this.nodePropsPredicates = from.getNodePropsPredicates ();
+		this.relationPropsPredicates = from.getRelationPropsPredicates ();
+		this.relationDependencies = from.getRelationDependencies ();
+	}
+
 		
 	/**
 	 * @see {@link SimplePGMaker#getName()}.
@@ -43,6 +71,16 @@ public class ConfigItem<SM extends SimplePGMaker<?,?,?,?>>
 		this.nodeIrisSparql = nodeIrisSparql;
 	}
 
+	/**
+	 * @see PGNodeMakeProcessor#getWideNodesSparql().
+	 */
+	public String getWideNodesSparql () {
+		return wideNodesSparql;
+	}
+	public void setWideNodesSparql ( String wideNodesSparql ) {
+		this.wideNodesSparql = wideNodesSparql;
+	}
+
 	/**
 	 * @see PGNodeHandler#getLabelsSparql().
 	 */
@@ -83,6 +121,51 @@ public class ConfigItem<SM extends SimplePGMaker<?,?,?,?>>
 		this.relationPropsSparql = relationPropsSparql;
 	}
 
+	/**
+	 * @see PGNodeHandler#getLabelsPredicate().
+	 */
+	public String getLabelsPredicate () {
+		return labelsPredicate;
+	}
+	public void setLabelsPredicate ( String labelsPredicate ) {
+		this.labelsPredicate = labelsPredicate;
+	}
+
+	/**
+	 * @see PGNodeHandler#getNodePropsPredicates().
+	 */
+	public Map<String, String> getNodePropsPredicates () {
+		return nodePropsPredicates;
+	}
+	public void setNodePropsPredicates ( Map<String, String> nodePropsPredicates ) {
+		this.nodePropsPredicates = nodePropsPredicates;
+	}
+
+	/**
+	 * @see PGRelationHandler#getRelationPropsPredicates().
+	 */
+	public Map<String, String> getRelationPropsPredicates () {
+		return relationPropsPredicates;
+	}
+	public void setRelationPropsPredicates ( Map<String, String> relationPropsPredicates ) {
+		this.relationPropsPredicates = relationPropsPredicates;
+	}
+	
+	/**
+	 * <p>The {@link #getName() names} of the config items which of nodes are needed by the relations of this 
+	 * item (this item's own nodes are always implied).</p>
+	 * 
+	 * <p>When {@link MultiConfigPGMaker#getConfigItemsParallelism() running in parallel}, the relations of this 
+	 * item are started as soon as these nodes are made, possibly while the nodes of other items are still being 
+	 * made. If this is null (the default), the relations depend on the nodes of all the config items.</p>
+	 */
+	public List<String> getRelationDependencies () {
+		return relationDependencies;
+	}
+	public void setRelationDependencies ( List<String> relationDependencies ) {
+		this.relationDependencies = relationDependencies;
+	}
+	
 	public void configureMaker ( SM simpleMaker )
 	{
 		simpleMaker.setName ( this.getName () );
@@ -94,11 +177,15 @@ public class ConfigItem<SM extends SimplePGMaker<?,?,?,?>>
 		PGRelationHandler relHandler = (PGRelationHandler) relMaker.getBatchJob ();
 		
 		nodeMaker.setNodeIrisSparql ( this.getNodeIrisSparql () );
+		nodeMaker.setWideNodesSparql ( this.getWideNodesSparql () );
 
 		nodeHandler.setLabelsSparql ( this.getLabelsSparql () );
 		nodeHandler.setNodePropsSparql ( this.getNodePropsSparql () );
+		nodeHandler.setLabelsPredicate ( this.getLabelsPredicate () );
+		nodeHandler.setNodePropsPredicates ( this.getNodePropsPredicates () );
 		
 		relHandler.setRelationTypesSparql ( this.getRelationTypesSparql () );
 		relHandler.setRelationPropsSparql ( this.getRelationPropsSparql () );
+		relHandler.setRelationPropsPredicates ( this.getRelationPropsPredicates () );
 	}
 }
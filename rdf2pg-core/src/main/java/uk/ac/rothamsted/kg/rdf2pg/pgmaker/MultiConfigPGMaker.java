@@ -1,16 +1,28 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.spring.SimplePGMakerFactory;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGMakerProcessor;
 
 
 /**
@@ -33,6 +45,8 @@ public abstract class MultiConfigPGMaker<CI extends ConfigItem<SM>, SM extends S
 {
 	private List<CI> configItems = new LinkedList<> ();
 	private SimplePGMakerFactory<SM> pgMakerFactory;
+	private int configItemsParallelism = 1;
+	private int maxConcurrentBatches = -1;
 	
 	private ApplicationContext springContext;
 	
@@ -90,15 +104,124 @@ public abstract class MultiConfigPGMaker<CI extends ConfigItem<SM>, SM extends S
 	{
 		this.makeBegin ( tdbPath, opts );
 		
-		// First the nodes ( mode = 0 ) and then the relations ( mode = 1 )
-		// That ensures that cross-references made by different queries are taken  
-		for ( int mode = 0; mode <= 2; mode++ )
-			for ( CI cfg: this.getConfigItems () )
-				this.makeIteration ( mode, cfg, tdbPath, opts );
+		int parallelism = this.getConfigItemsParallelism ();
+		if ( parallelism <= 1 )
+		{
+			// First the nodes ( mode = 0 ) and then the relations ( mode = 1 )
+			// That ensures that cross-references made by different queries are taken  
+			for ( int mode = 0; mode <= 2; mode++ )
+				for ( CI cfg: this.getConfigItems () )
+					this.makeIteration ( mode, cfg, tdbPath, opts );
+		}
+		else
+			this.makeParallel ( parallelism, tdbPath, opts );
 		
 		this.makeEnd ( tdbPath, opts );
 	}
 	
+	/**
+	 * <p>Used by {@link #make(String, Object...)} when {@link #getConfigItemsParallelism()} is &gt; 1.</p> 
+	 * 
+	 * <p>The nodes of all the config items are started in parallel and the relations of an item are started as soon 
+	 * as the nodes it {@link ConfigItem#getRelationDependencies() depends on} are done, which, by default, means 
+	 * the nodes of all the items. The post-processing phase is started when all the relations are done.</p>
+	 */
+	private void makeParallel ( int parallelism, String tdbPath, Object... opts )
+	{
+		int maxBatches = this.getMaxConcurrentBatches ();
+		if ( maxBatches <= 0 ) maxBatches = Runtime.getRuntime ().availableProcessors ();
+		log.info ( 
+			"Running up to {} config item(s) in parallel, with up to {} concurrent batches", parallelism, maxBatches 
+		);
+		
+		checkRelationDependencies ();
+		
+		SimplePGMakerFactory<SM> makerFactory = this.getPGMakerFactory ();
+		makerFactory.setBatchPermits ( new Semaphore ( maxBatches ) );
+		ExecutorService executor = Executors.newFixedThreadPool ( parallelism );
+		try
+		{
+			List<CI> cfgItems = this.getConfigItems ();
+			
+			// Nodes
+			Map<String, CompletableFuture<Void>> nodeTasks = new HashMap<> ();
+			List<CompletableFuture<Void>> allNodeTasks = new ArrayList<> ();
+			for ( CI cfg: cfgItems )
+			{
+				var nodeTask = CompletableFuture.runAsync ( () -> this.makeIteration ( 0, cfg, tdbPath, opts ), executor );
+				allNodeTasks.add ( nodeTask );
+				if ( cfg.getName () != null ) nodeTasks.put ( cfg.getName (), nodeTask );
+			}
+			
+			// Relations, each after its dependencies
+			List<CompletableFuture<Void>> relTasks = new ArrayList<> ();
+			for ( int i = 0; i < cfgItems.size (); i++ )
+			{
+				CI cfg = cfgItems.get ( i );
+				List<CompletableFuture<Void>> deps = getRelationDependencyTasks ( cfg, allNodeTasks.get ( i ), nodeTasks, allNodeTasks );
+				relTasks.add ( 
+					CompletableFuture.allOf ( deps.toArray ( new CompletableFuture [ 0 ] ) )
+					.thenRunAsync ( () -> this.makeIteration ( 1, cfg, tdbPath, opts ), executor )
+				);
+			}
+			CompletableFuture.allOf ( relTasks.toArray ( new CompletableFuture [ 0 ] ) ).join ();
+			
+			// Post-processing, when everything else is done
+			CompletableFuture.allOf ( 
+				cfgItems.stream ()
+				.map ( cfg -> CompletableFuture.runAsync ( () -> this.makeIteration ( 2, cfg, tdbPath, opts ), executor ) )
+				.toArray ( CompletableFuture []::new )
+			).join ();
+		}
+		catch ( CompletionException ex ) {
+			Throwable cause = ex.getCause ();
+			throw new RuntimeException ( "Error while running the PG maker: " + cause.getMessage (), cause );
+		}
+		finally {
+			executor.shutdownNow ();
+			makerFactory.setBatchPermits ( null );
+		}
+	}
+
+	/**
+	 * Used by {@link #makeParallel(int, String, Object...)} to get the node tasks that the relations of a config
+	 * item have to wait for.
+	 */
+	private List<CompletableFuture<Void>> getRelationDependencyTasks ( 
+		CI cfg, CompletableFuture<Void> ownNodeTask, 
+		Map<String, CompletableFuture<Void>> nodeTasks, List<CompletableFuture<Void>> allNodeTasks
+	)
+	{
+		List<String> depNames = cfg.getRelationDependencies ();
+		if ( depNames == null ) return allNodeTasks;
+		
+		List<CompletableFuture<Void>> result = new ArrayList<> ();
+		result.add ( ownNodeTask );
+		for ( String depName: depNames ) result.add ( nodeTasks.get ( depName ) );
+		return result;
+	}
+	
+	/**
+	 * Checks that {@link ConfigItem#getRelationDependencies()} refer to existing config items. We do it before
+	 * starting anything. 
+	 */
+	private void checkRelationDependencies ()
+	{
+		Set<String> names = this.getConfigItems ()
+			.stream ()
+			.map ( ConfigItem::getName )
+			.collect ( Collectors.toSet () );
+
+		for ( CI cfg: this.getConfigItems () )
+		{
+			if ( cfg.getRelationDependencies () == null ) continue;
+			for ( String depName: cfg.getRelationDependencies () )
+				if ( !names.contains ( depName ) ) throw new IllegalArgumentException ( String.format ( 
+					"The config item '%s' depends on the non-existing config item '%s'", cfg.getName (), depName 
+				));
+		}
+	}
+	
 	/**
 	 * Just logs that it's beginning with the current maker.
 	 */
@@ -140,6 +263,44 @@ public abstract class MultiConfigPGMaker<CI extends ConfigItem<SM>, SM extends S
 		this.configItems = configItems;
 	}
 
+	/**
+	 * <p>If &gt; 1, {@link #make(String, Object...)} runs up to this number of config items in parallel. The nodes
+	 * of all the items are started first, the relations of an item are started as soon as the nodes they 
+	 * {@link ConfigItem#getRelationDependencies() depend on} are made (by default, all of them), the 
+	 * post-processing is started when all the relations are done.</p>
+	 * 
+	 * <p>This is useful when there are many config items of different size, which would otherwise leave most 
+	 * of the cores idle while the small ones are running. The batches of all the items share the 
+	 * {@link #getMaxConcurrentBatches() same budget}. Default is 1, ie, the config items are run one after 
+	 * the other.</p>  
+	 */
+	public int getConfigItemsParallelism ()
+	{
+		return configItemsParallelism;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "configItemsParallelism" )
+	public void setConfigItemsParallelism ( int configItemsParallelism )
+	{
+		this.configItemsParallelism = configItemsParallelism;
+	}
+
+	/**
+	 * When {@link #getConfigItemsParallelism()} is &gt; 1, this is the max number of batches that all the 
+	 * running config items can have in flight, see {@link PGMakerProcessor#getBatchPermits()}. Default is -1, 
+	 * which means the number of available processors.
+	 */
+	public int getMaxConcurrentBatches ()
+	{
+		return maxConcurrentBatches;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "maxConcurrentBatches" )
+	public void setMaxConcurrentBatches ( int maxConcurrentBatches )
+	{
+		this.maxConcurrentBatches = maxConcurrentBatches;
+	}
+
 	/**
 	 * This is used to get a new {@link SimplePGMaker} to be used with a new configuration while iterating over
 	 * {@link #getConfigItems()}. This is designed this way in order to make it possible to configure/autowire
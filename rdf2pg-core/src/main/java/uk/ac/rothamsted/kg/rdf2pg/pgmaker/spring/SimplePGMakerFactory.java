@@ -1,5 +1,7 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker.spring;
 
+import java.util.concurrent.Semaphore;
+
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +11,7 @@ import org.springframework.context.ApplicationContextAware;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.SimplePGMaker;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGMakerProcessor;
 
 /**
  * This is a simple {@link SimplePGMaker} factory which of {@link #getObject()} invokes a 
@@ -34,14 +37,41 @@ public abstract class SimplePGMakerFactory<SM extends SimplePGMaker<?, ?, ?, ?>>
 	}
 	
 	
+	private Semaphore batchPermits;
+	
 	/**
 	 * @return the {@link SimplePGMaker} configured in the current Spring container.
+	 * 
+	 * This is synchronized, since the {@link PGMakerSessionScope session} is global and it's used only while
+	 * the maker and its components are created. Once returned, the maker can run concurrently with 
+	 * others (see {@link MultiConfigPGMaker#getConfigItemsParallelism()}).
+	 * 
 	 */
 	@Override
-	public SM getObject () throws BeansException
+	public synchronized SM getObject () throws BeansException
 	{
 		session.startSession ();
-		return this.appCtx.getBean ( type );
+		SM maker = this.appCtx.getBean ( type );
+		if ( batchPermits != null ) 
+		{
+			maker.getPGNodeMaker ().setBatchPermits ( batchPermits );
+			maker.getPGRelationMaker ().setBatchPermits ( batchPermits );
+		}
+		return maker;
+	}
+
+	/**
+	 * If set, it's passed to the processors of the makers returned by {@link #getObject()}, see 
+	 * {@link PGMakerProcessor#getBatchPermits()}. 
+	 */
+	public Semaphore getBatchPermits ()
+	{
+		return batchPermits;
+	}
+
+	public void setBatchPermits ( Semaphore batchPermits )
+	{
+		this.batchPermits = batchPermits;
 	}
 
 	@Override
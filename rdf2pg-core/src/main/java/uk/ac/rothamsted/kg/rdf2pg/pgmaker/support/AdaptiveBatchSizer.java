@@ -0,0 +1,141 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An AIMD (additive increase, multiplicative decrease) controller of the batch size, used by 
+ * {@link PGMakerProcessor#getBatchTargetTime()}.</p>
+ * 
+ * <p>Every time a batch is completed, {@link #batchCompleted(int, long)} is invoked with the batch size and 
+ * the time it took to process it. If this time is above the target, the batch size is halved, if it is below 
+ * {@link #getTargetTime() target} * {@link #INCREASE_THRESHOLD}, the size is increased by 
+ * {@link #getIncreaseStep() a fixed step}, in both cases within the min/max bounds. The results of batches 
+ * submitted with a size smaller than the current one are ignored, since they're stale (ie, they come from 
+ * before a previous decrease). This prevents that the many batches in flight at the time of a slowdown 
+ * shrink the size many times in a row. Failed batches ({@link #batchFailed(int)}) are treated like slow 
+ * ones.</p>
+ * 
+ * <p>Note that the batch size is a no. of entities (IRIs/relations), not the amount of data (eg, bytes) that 
+ * they bring, which isn't known before the batch is processed. Since the time per entity depends on the 
+ * data per entity, the size it converges to is specific for every config item.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class AdaptiveBatchSizer
+{
+	/**
+	 * The size is increased when the batch time is below target time * this factor. Having a margin avoids
+	 * oscillations around the target.
+	 */
+	public static final double INCREASE_THRESHOLD = 0.8;
+	
+	private final int minSize, maxSize, increaseStep;
+	private final long targetTime;
+	private final IntConsumer sizeListener;
+	
+	private int batchSize;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param initialSize the initial batch size, which is brought within the min/max bounds, if needed.
+	 * @param targetTime the batch processing time to aim at, in ms.
+	 * @param sizeListener invoked with the new size, every time it changes (eg, 
+	 *        {@link PGMakerProcessor#setMaxBatchSize(int)}).
+	 */
+	public AdaptiveBatchSizer ( 
+		int initialSize, int minSize, int maxSize, long targetTime, IntConsumer sizeListener 
+	)
+	{
+		if ( minSize < 1 || maxSize < minSize ) throw new IllegalArgumentException ( 
+			"Invalid adaptive batch size bounds: [" + minSize + ", " + maxSize + "]" 
+		);
+		if ( targetTime <= 0 ) throw new IllegalArgumentException ( 
+			"Invalid adaptive batch target time: " + targetTime 
+		);
+		
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.targetTime = targetTime;
+		this.increaseStep = Math.max ( 1, ( maxSize - minSize ) / 20 );
+		this.sizeListener = sizeListener;
+		
+		this.batchSize = Math.max ( minSize, Math.min ( maxSize, initialSize ) );
+		sizeListener.accept ( this.batchSize );
+	}
+
+	/**
+	 * Reports the processing time of a batch and updates the batch size accordingly. 
+	 * 
+	 * @return the new batch size.
+	 */
+	public synchronized int batchCompleted ( int size, long time )
+	{
+		// Stale result, it was submitted before the last decrease
+		if ( size < batchSize ) return batchSize;
+		
+		int newSize = batchSize;
+		if ( time > targetTime ) 
+			newSize = Math.max ( minSize, batchSize / 2 );
+		else if ( time < targetTime * INCREASE_THRESHOLD )
+			newSize = Math.min ( maxSize, batchSize + increaseStep );
+		
+		if ( newSize == batchSize ) return batchSize;
+		
+		if ( time == Long.MAX_VALUE )
+			log.debug ( "Batch of {} item(s) failed, changing batch size to {}", size, newSize );
+		else log.debug ( 
+			"Batch of {} item(s) took {} ms, changing batch size to {}", size, time, newSize 
+		);
+		batchSize = newSize;
+		sizeListener.accept ( newSize );
+		return newSize;
+	}
+
+	/**
+	 * Reports that a batch failed, which halves the batch size, as for a batch that was slower than the target.
+	 * As for {@link #batchCompleted(int, long)}, stale results are ignored.
+	 * 
+	 * @return the new batch size.
+	 */
+	public synchronized int batchFailed ( int size )
+	{
+		return batchCompleted ( size, Long.MAX_VALUE );
+	}
+
+	public synchronized int getBatchSize ()
+	{
+		return batchSize;
+	}
+
+	public int getMinSize ()
+	{
+		return minSize;
+	}
+
+	public int getMaxSize ()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * The target batch processing time, in ms.
+	 */
+	public long getTargetTime ()
+	{
+		return targetTime;
+	}
+
+	/**
+	 * The additive increase, which is 1/20 of the min/max range.
+	 */
+	public int getIncreaseStep ()
+	{
+		return increaseStep;
+	}
+}
@@ -0,0 +1,74 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The base for an {@link ExecutorService} that wraps another one, usually to decorate the tasks 
+ * submitted to it (see {@link #execute(Runnable)}).</p>
+ * 
+ * <p>All the life cycle methods are forwarded to the delegate. We use this to add things like throttling or 
+ * batch timing to the executor of a {@link PGMakerProcessor}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class DelegatingExecutorService extends AbstractExecutorService
+{
+	protected final ExecutorService delegate;
+
+	public DelegatingExecutorService ( ExecutorService delegate )
+	{
+		this.delegate = delegate;
+	}
+
+	/**
+	 * This default just forwards the task to the delegate.
+	 */
+	@Override
+	public void execute ( Runnable task )
+	{
+		delegate.execute ( task );
+	}
+
+	/**
+	 * The wrapped executor, which runs the tasks.
+	 */
+	public ExecutorService getDelegate ()
+	{
+		return delegate;
+	}
+	
+	@Override
+	public void shutdown ()
+	{
+		delegate.shutdown ();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow ()
+	{
+		return delegate.shutdownNow ();
+	}
+
+	@Override
+	public boolean isShutdown ()
+	{
+		return delegate.isShutdown ();
+	}
+
+	@Override
+	public boolean isTerminated ()
+	{
+		return delegate.isTerminated ();
+	}
+
+	@Override
+	public boolean awaitTermination ( long timeout, TimeUnit unit ) throws InterruptedException
+	{
+		return delegate.awaitTermination ( timeout, unit );
+	}
+}
@@ -59,6 +59,18 @@ public abstract class PGEntityHandler<T> implements Consumer<Set<T>>
 		);
 	}
 	
+	/**
+	 * <p>Invoked by {@link PGMakerProcessor} when all the batches sent to this handler are done. This does nothing 
+	 * by default, handlers that do some work asynchronously or buffer data across batches should override it, 
+	 * to complete such work.</p>
+	 * 
+	 * <p>This is invoked once per processing run, from the thread that started the processing.</p>
+	 */
+	public void flush ()
+	{
+		// Nothing to do by default
+	}
+	
 	/**
 	 * This is used to manage operations with the RDF data source. We don't care about closing this, the invoker
 	 * has to do it. 
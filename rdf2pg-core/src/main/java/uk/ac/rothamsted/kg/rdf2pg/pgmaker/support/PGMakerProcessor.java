@@ -1,11 +1,22 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import uk.ac.ebi.utils.threading.batchproc.processors.SetBasedBatchProcessor;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
 
 /**
  * <H1>The base for a property graph converter processor.</H1>
@@ -26,11 +37,367 @@ public abstract class PGMakerProcessor<T, H extends PGEntityHandler<T>>
 	extends SetBasedBatchProcessor<T, H>
 	implements AutoCloseable
 {
+	private int producerPartitions = 1;
+	private int maxInFlightBatches = -1;
+	private boolean useVirtualThreads = false;
+	private Semaphore batchPermits = null;
+	private long batchTargetTime = -1;
+	private int batchMinSize = 100;
+	private int batchMaxSizeLimit = 50000;
+	
+	private AdaptiveBatchSizer batchSizer;
+	/** The size decided by the batchSizer, which is applied by the producer thread */
+	private volatile int adaptiveBatchSize = -1;
+	/** Used by the batch timing, when the size of a batch isn't known */
+	private final AtomicInteger itemsSinceLastBatch = new AtomicInteger ();
+	private ExecutorService producerExecutor;
+	
 	public PGMakerProcessor ()
 	{
 		super ( 2500 );
 	}
 
+	/**
+	 * Installs the {@link #getBatchTargetTime() adaptive batch sizing} and the 
+	 * {@link #getMaxInFlightBatches() in-flight limit} if needed (see {@link #setupExecutor()}), then proceeds 
+	 * with the processing. At the end, it {@link PGEntityHandler#flush() flushes} the handler.
+	 */
+	@Override
+	public void process ( Consumer<Consumer<T>> sourceItemsProcessor )
+	{
+		this.setupExecutor ();
+		super.process ( 
+			batchItemsConsumer -> sourceItemsProcessor.accept ( this.getBatchSizingConsumer ( batchItemsConsumer ) ) 
+		);
+		
+		H handler = this.getBatchJob ();
+		if ( handler != null ) handler.flush ();
+	}
+	
+	/**
+	 * Wraps {@link #getExecutor() the executor} with the options set for this processor (virtual threads, 
+	 * adaptive batch sizing, limits on the batches in flight), if not already done. 
+	 * 
+	 * This is used by {@link #process(Consumer)} and it's available to subclasses that submit the batches 
+	 * on their own.
+	 * 
+	 * @return the resulting executor, which is also set as the new executor.
+	 */
+	protected ExecutorService setupExecutor ()
+	{
+		ExecutorService executor = this.getExecutor ();
+		
+		// Not yet installed
+		if ( !( executor instanceof DelegatingExecutorService ) )
+		{
+			ExecutorService vtExecutor = this.isUseVirtualThreads () ? newVirtualThreadExecutor () : null;
+			if ( vtExecutor != null )
+			{
+				executor.shutdown ();
+				executor = vtExecutor;
+				if ( this.getMaxInFlightBatches () <= 0 ) log.warn ( 
+					"Running with virtual threads and no maxInFlightBatches, batches might pile up in memory"
+				);
+			}
+			
+			long targetTime = this.getBatchTargetTime ();
+			if ( targetTime > 0 )
+			{
+				if ( batchSizer == null ) batchSizer = new AdaptiveBatchSizer ( 
+					this.getMaxBatchSize (), this.getBatchMinSize (), this.getBatchMaxSizeLimit (), targetTime, 
+					size -> this.adaptiveBatchSize = size 
+				);
+				executor = new BatchTimingExecutorService ( executor );
+			}
+			
+			if ( batchPermits != null )
+				executor = new ThrottledExecutorService ( executor, batchPermits );
+
+			int maxInFlight = this.getMaxInFlightBatches ();
+			if ( maxInFlight > 0 )
+				executor = new ThrottledExecutorService ( executor, maxInFlight );
+			
+			this.setExecutor ( executor );
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * <p>If &gt; 1, the results of the query that selects the entities to be processed (eg, 
+	 * {@link PGNodeMakeProcessor#getNodeIrisSparql()}) are split into this number of partitions, based on ?iri, 
+	 * and the partitions are processed in parallel, all of them feeding the batches of this processor (see 
+	 * {@link RdfDataManager#processSelectPartitioned(String, String, String, int, Executor, Consumer)}).</p> 
+	 *
+	 * <p>This is useful when the handlers are fast enough to make the processing of the SPARQL results a 
+	 * bottleneck. The partitions run on {@link #getProducerExecutor()}. Default is 1, ie, no partitioning.</p> 
+	 */
+	public int getProducerPartitions ()
+	{
+		return producerPartitions;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "producerPartitions" )
+	public void setProducerPartitions ( int producerPartitions )
+	{
+		this.producerPartitions = producerPartitions;
+	}
+	
+	/**
+	 * The executor for the {@link #getProducerPartitions() producer partitions}. This is created once per 
+	 * processor, when first needed, and it's shut down by {@link #close()}.
+	 */
+	protected synchronized ExecutorService getProducerExecutor ()
+	{
+		if ( producerExecutor == null ) 
+			producerExecutor = Executors.newFixedThreadPool ( Math.max ( this.getProducerPartitions (), 1 ) );
+		return producerExecutor;
+	}
+	
+	/**
+	 * <p>If &gt; 0, the max number of batches that can be submitted to the handlers and not yet completed. When 
+	 * this is reached, the producer (ie, the thread reading the RDF source) blocks until some batch is 
+	 * completed.</p>
+	 * 
+	 * <p>This keeps the memory used by pending batches bounded to about {@link #getMaxBatchSize()} * this limit, 
+	 * regardless of how slow the target is. Default is -1, ie, no limit other than the one possibly imposed by the 
+	 * {@link #getExecutor() executor}.</p>
+	 * 
+	 * @see ThrottledExecutorService
+	 */
+	public int getMaxInFlightBatches ()
+	{
+		return maxInFlightBatches;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "maxInFlightBatches" )
+	public void setMaxInFlightBatches ( int maxInFlightBatches )
+	{
+		this.maxInFlightBatches = maxInFlightBatches;
+	}
+
+	/**
+	 * <p>If set, it's a limit on the batches in flight that is shared with other processors, ie, each batch 
+	 * takes a permit from here, in addition to {@link #getMaxInFlightBatches()}.</p>
+	 * 
+	 * <p>This is used to have a global budget when multiple makers run concurrently 
+	 * (see {@link uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker#getConfigItemsParallelism()}).
+	 * Default is null.</p> 
+	 */
+	public Semaphore getBatchPermits ()
+	{
+		return batchPermits;
+	}
+
+	public void setBatchPermits ( Semaphore batchPermits )
+	{
+		this.batchPermits = batchPermits;
+	}
+
+	/**
+	 * A gauge of the batches currently submitted and not completed (ie, queued or running). 
+	 * This returns -1 if neither {@link #getMaxInFlightBatches()} nor {@link #getBatchPermits()} are set, since 
+	 * in this case we don't track it.
+	 */
+	public int getInFlightBatches ()
+	{
+		ExecutorService executor = this.getExecutor ();
+		return executor instanceof ThrottledExecutorService 
+			? ( (ThrottledExecutorService) executor ).getInFlightTasks () 
+			: -1;
+	}
+	
+	/**
+	 * <p>If true, {@link #getExecutor() the executor} is replaced by one that runs each batch on a new virtual 
+	 * thread. Since the batch jobs are mostly blocking I/O (RDF reads, target writes), this allows for having 
+	 * many batches in flight, without sizing a thread pool. You should combine it with 
+	 * {@link #getMaxInFlightBatches()}, to keep memory bounded, and possibly with a limit on the target 
+	 * connections (eg, {@code neo4jMaxSessions} in rdf2neo).</p>
+	 * 
+	 * <p>This requires a JDK &gt;= 21 at runtime, on older versions, the option is ignored and the default, 
+	 * bounded, executor is used (see {@link #newVirtualThreadExecutor()}). Default is false.</p>
+	 */
+	public boolean isUseVirtualThreads ()
+	{
+		return useVirtualThreads;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "useVirtualThreads" )
+	public void setUseVirtualThreads ( boolean useVirtualThreads )
+	{
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	/**
+	 * Uses reflection to get {@code Executors.newVirtualThreadPerTaskExecutor()}, so that we can still 
+	 * compile and run with Java 11. If that's not available, returns null. We don't fall back to an unbounded 
+	 * pool of platform threads, since that would create a thread per batch in flight.
+	 */
+	protected static ExecutorService newVirtualThreadExecutor ()
+	{
+		try {
+			Method factory = Executors.class.getMethod ( "newVirtualThreadPerTaskExecutor" );
+			return (ExecutorService) factory.invoke ( null );
+		}
+		catch ( NoSuchMethodException ex ) {
+			LoggerFactory.getLogger ( PGMakerProcessor.class ).warn ( 
+				"Virtual threads not available in this JDK, falling back to the default thread pool" 
+			);
+			return null;
+		}
+		catch ( IllegalAccessException | InvocationTargetException ex ) {
+			throw new IllegalStateException ( "Error while creating the virtual thread executor: " + ex.getMessage (), ex );
+		}
+	}
+	
+	/**
+	 * <p>If &gt; 0, enables the adaptive batch sizing: the time taken by each batch job (ie, the handler) is 
+	 * measured and {@link #getMaxBatchSize() the batch size} is increased or decreased to hold this target time 
+	 * (in ms), within {@link #getBatchMinSize()} and {@link #getBatchMaxSizeLimit()}. The initial size is the 
+	 * configured batch size. The size is counted in entities (IRIs, relations), see {@link AdaptiveBatchSizer}.</p>
+	 * 
+	 * <p>This is useful to have a target transaction time that doesn't depend on the amount of data 
+	 * per entity, which varies a lot between different {@link uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem mappings}. Default is -1, ie, 
+	 * fixed batch size.</p>
+	 * 
+	 * @see AdaptiveBatchSizer
+	 */
+	public long getBatchTargetTime ()
+	{
+		return batchTargetTime;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "batchTargetTime" )
+	public void setBatchTargetTime ( long batchTargetTime )
+	{
+		this.batchTargetTime = batchTargetTime;
+	}
+
+	/**
+	 * The lower bound of the {@link #getBatchTargetTime() adaptive batch size}. Default is 100.
+	 */
+	public int getBatchMinSize ()
+	{
+		return batchMinSize;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "batchMinSize" )
+	public void setBatchMinSize ( int batchMinSize )
+	{
+		this.batchMinSize = batchMinSize;
+	}
+
+	/**
+	 * The upper bound of the {@link #getBatchTargetTime() adaptive batch size}. Default is 50000.
+	 */
+	public int getBatchMaxSizeLimit ()
+	{
+		return batchMaxSizeLimit;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "batchMaxSizeLimit" )
+	public void setBatchMaxSizeLimit ( int batchMaxSizeLimit )
+	{
+		this.batchMaxSizeLimit = batchMaxSizeLimit;
+	}
+
+	/**
+	 * <p>Used with the {@link #getBatchTargetTime() adaptive batch sizing}, wraps the consumer of the source items 
+	 * with the tracking needed by the sizer, ie, it counts the items and it applies the size changes.</p>
+	 * 
+	 * <p>The size changes are decided by the threads that complete the batches, and here we apply them to 
+	 * {@link #setMaxBatchSize(int) the batch size} from the producer thread, ie, from the same thread that 
+	 * uses the size to make the batches. This must be used with the consumer that is passed to the producer, 
+	 * before {@link #getSynchronizedConsumer(Consumer) synchronising it}.</p>
+	 * 
+	 * <p>If the adaptive sizing isn't enabled, this just returns the consumer.</p>
+	 */
+	protected Consumer<T> getBatchSizingConsumer ( Consumer<T> consumer )
+	{
+		if ( batchSizer == null ) return consumer;
+		return item -> 
+		{
+			int newSize = this.adaptiveBatchSize;
+			if ( newSize > 0 && newSize != this.getMaxBatchSize () ) super.setMaxBatchSize ( newSize );
+			itemsSinceLastBatch.incrementAndGet ();
+			consumer.accept ( item );
+		};
+	}
+	
+	/**
+	 * Used with {@link #getProducerPartitions()}, to make the batch processor's entity consumer safe for 
+	 * concurrent producers.
+	 */
+	protected <TT> Consumer<TT> getSynchronizedConsumer ( Consumer<TT> consumer )
+	{
+		if ( this.getProducerPartitions () <= 1 ) return consumer;
+		return entity -> {
+			synchronized ( consumer ) {
+				consumer.accept ( entity );
+			}
+		};
+	}
+
+
+	/**
+	 * <p>Times the batch jobs and reports to the {@link #getBatchTargetTime() adaptive batch sizer}.</p>
+	 * 
+	 * <p>The batch size is taken from the task if it's a {@link SizedBatchTask}, else it's the no. of items 
+	 * received since the previous submission (see {@link #getBatchSizingConsumer(Consumer)}), since the batch 
+	 * processor submits a batch as soon as it's ready. Failed batches are reported as such, including those 
+	 * failing within a {@link Future} task, which doesn't throw its exceptions.</p>
+	 */
+	private class BatchTimingExecutorService extends DelegatingExecutorService
+	{
+		public BatchTimingExecutorService ( ExecutorService delegate ) {
+			super ( delegate );
+		}
+
+		@Override
+		public void execute ( Runnable task )
+		{
+			int size = task instanceof SizedBatchTask 
+				? ( (SizedBatchTask) task ).getBatchSize () 
+				: itemsSinceLastBatch.getAndSet ( 0 );
+			
+			delegate.execute ( () -> 
+			{
+				long start = System.currentTimeMillis ();
+				try {
+					task.run ();
+				}
+				catch ( RuntimeException | Error ex ) {
+					batchSizer.batchFailed ( size );
+					throw ex;
+				}
+				
+				if ( isFailed ( task ) ) batchSizer.batchFailed ( size );
+				else batchSizer.batchCompleted ( size, System.currentTimeMillis () - start );
+			});
+		}
+		
+		private boolean isFailed ( Runnable task )
+		{
+			if ( !( task instanceof Future ) ) return false;
+			
+			Future<?> future = (Future<?>) task;
+			if ( !future.isDone () ) return false;
+			if ( future.isCancelled () ) return true;
+			
+			try {
+				future.get ();
+				return false;
+			}
+			catch ( ExecutionException ex ) {
+				return true;
+			}
+			catch ( InterruptedException ex ) {
+				Thread.currentThread ().interrupt ();
+				return true;
+			}
+		}
+	}
+	
 
 	// I'm here just to use Spring annotations 
 	@Autowired ( required = false ) @Qualifier ( "batchMaxSize" )
@@ -56,6 +423,11 @@ public abstract class PGMakerProcessor<T, H extends PGEntityHandler<T>>
 	@Override
 	public void close () throws Exception
 	{
+		synchronized ( this ) {
+			if ( producerExecutor != null ) producerExecutor.shutdownNow ();
+			producerExecutor = null;
+		}
+		
 		Consumer<?> consumer = this.getBatchJob ();
 		if ( consumer != null && consumer instanceof AutoCloseable ) ((AutoCloseable) consumer).close ();
 	}	
@@ -1,9 +1,20 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.jena.rdf.model.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.ConfigItem;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
+
 /**
  * <h1>The Generic Node Maker handler.</h1>
  *
@@ -17,6 +28,46 @@ import org.springframework.beans.factory.annotation.Qualifier;
 public abstract class PGNodeHandler extends PGEntityHandler<Resource>
 {
 	private String labelsSparql, nodePropsSparql;
+	
+	private String labelsPredicate;
+	private Map<String, String> nodePropsPredicates;
+	
+	
+	/**
+	 * <p>Gets the nodes for a batch of node resources, using both the SPARQL mapping and the 
+	 * {@link #getLabelsPredicate() direct predicate mapping}, when configured. This is what the 
+	 * concrete handlers usually invoke in their {@link #accept(java.util.Set)}.</p>
+	 * 
+	 * <p>Nodes already built by the {@link PGNodeMakeProcessor#getWideNodesSparql() wide mode} don't go through
+	 * SPARQL again.</p>
+	 * 
+	 * <p>All the RDF fetching happens within the same read transaction (see 
+	 * {@link RdfDataManager#calculateRead(java.util.function.Supplier)}).</p>
+	 */
+	protected Collection<PGNode> getPGNodes ( Set<Resource> nodeResources )
+	{
+		RdfDataManager rdfMgr = this.getRdfDataManager ();
+		
+		return rdfMgr.calculateRead ( () -> 
+		{
+			List<PGNode> result = new ArrayList<> ( nodeResources.size () );
+			Set<Resource> plainResources = new HashSet<> ();
+			for ( Resource nodeRes: nodeResources )
+			{
+				if ( nodeRes instanceof PGNodeResource ) result.add ( ( (PGNodeResource) nodeRes ).getPGNode () );
+				else plainResources.add ( nodeRes );
+			}
+			
+			if ( !plainResources.isEmpty () ) result.addAll ( 
+				rdfMgr.getPGNodes ( plainResources, this.getLabelsSparql (), this.getNodePropsSparql () ) 
+			);
+			
+			rdfMgr.addPGLabels ( result, this.getLabelsPredicate () );
+			rdfMgr.addPGProps ( result, this.getNodePropsPredicates () );
+			
+			return result;
+		});
+	}
 
 	/**
 	 * This is a query that must returns the variable ?label and contains the variable ?iri, which is bound to a node's
@@ -51,4 +102,45 @@ public abstract class PGNodeHandler extends PGEntityHandler<Resource>
 	{
 		this.nodePropsSparql = nodePropsSparql;
 	}
+
+	/**
+	 * <p>An alternative, or a complement, to {@link #getLabelsSparql()}: a predicate IRI, whose values 
+	 * become node labels, eg, rdf:type.</p>
+	 * 
+	 * <p>This is fetched via {@link RdfDataManager#addPGLabels(Collection, String)}, which is much faster than 
+	 * a SPARQL query. Unlike the queries, it only looks at the default graph of the RDF dataset 
+	 * (Jena's {@code Quad.defaultGraphIRI}), triples in named graphs are ignored.</p>
+	 */
+	public String getLabelsPredicate ()
+	{
+		return labelsPredicate;
+	}
+
+	@Autowired ( required = false )
+	@Qualifier ( "labelsPredicate" )
+	public void setLabelsPredicate ( String labelsPredicate )
+	{
+		this.labelsPredicate = labelsPredicate;
+	}
+
+	/**
+	 * <p>An alternative, or a complement, to {@link #getNodePropsSparql()}: a map of predicate IRI -&gt; property name,
+	 * which defines node properties by means of predicates having literal values. A null name means the name is 
+	 * obtained from the predicate IRI.</p>
+	 * 
+	 * <p>This is fetched via {@link RdfDataManager#addPGProps(Collection, Map)}, which is much faster than 
+	 * a SPARQL query. As for {@link #getLabelsPredicate()}, only the default graph is considered.</p>
+	 * 
+	 * <p>This isn't auto-wired, since Spring would interpret a map as a collection of beans, use a 
+	 * {@link ConfigItem} to set it.</p>
+	 */
+	public Map<String, String> getNodePropsPredicates ()
+	{
+		return nodePropsPredicates;
+	}
+
+	public void setNodePropsPredicates ( Map<String, String> nodePropsPredicates )
+	{
+		this.nodePropsPredicates = nodePropsPredicates;
+	}
 }
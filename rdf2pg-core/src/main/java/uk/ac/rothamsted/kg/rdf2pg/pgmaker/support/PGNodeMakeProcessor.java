@@ -27,15 +27,29 @@ public abstract class PGNodeMakeProcessor<NH extends PGNodeHandler>
 	extends PGMakerProcessor<Resource, NH>
 {
 	private String nodeIrisSparql;
+	private String wideNodesSparql;
 	
 	public void process ( RdfDataManager rdfMgr, Object...opts )
 	{
 		log.info ( "Starting PG nodes making" );
 		
+		String wideSparql = this.getWideNodesSparql ();
+		
 		// processNodeIris() passes the IRIs obtained from SPARQL to the IRI consumer set by the BatchProcessor. The latter
 		// pushes the IRI into a batch and submits a full batch to the parallel executor.
-		Consumer<Consumer<Resource>> nodeIriProcessor = 
-			resProc -> rdfMgr.processNodeIris ( this.getNodeIrisSparql (), resProc );
+		//
+		// In the wide mode, we do the same with nodes that are already complete, wrapped into resources, and the 
+		// handler won't need to query their details
+		//
+		// With multiple producer partitions, the IRIs are consumed by multiple threads, see getProducerPartitions()
+		//
+		int partitions = this.getProducerPartitions ();
+		Consumer<Consumer<Resource>> nodeIriProcessor = wideSparql == null 
+			? resProc -> rdfMgr.processNodeIris ( 
+					this.getNodeIrisSparql (), partitions, this.getProducerExecutor (), 
+					this.getSynchronizedConsumer ( resProc ) 
+				)
+			: resProc -> rdfMgr.processWideNodes ( wideSparql, pgNode -> resProc.accept ( new PGNodeResource ( pgNode ) ) );
 		
 		super.process ( nodeIriProcessor );
 		log.info ( "PG nodes making ended" );
@@ -59,5 +73,30 @@ public abstract class PGNodeMakeProcessor<NH extends PGNodeHandler>
 	{
 		this.nodeIrisSparql = nodeIrisSparql;
 	}
+
+	/**
+	 * <p>An alternative to {@link #getNodeIrisSparql()}, {@link PGNodeHandler#getLabelsSparql()} and
+	 * {@link PGNodeHandler#getNodePropsSparql()}: a single query that returns the whole node data, with rows 
+	 * of {@code ?iri ?label ?name ?value}.</p>
+	 * 
+	 * <p>A row can bind ?label, or ?name and ?value, or both, the rows about the same ?iri <b>must be consecutive</b>
+	 * (ie, use {@code ORDER BY ?iri}). The nodes are built on the fly by grouping such rows 
+	 * (see {@link RdfDataManager#processWideNodes(String, Consumer)}), which, for datasets where most of the 
+	 * triples about a node are mapped, is much faster than fetching the details of each node separately.</p>
+	 * 
+	 * <p>When this is set, it is used in place of the node IRIs query. The handler's direct-predicate mappings, if 
+	 * any, are still applied to the nodes built this way. {@link #getProducerPartitions() Producer partitioning} 
+	 * isn't supported in this mode.</p>
+	 */
+	public String getWideNodesSparql ()
+	{
+		return wideNodesSparql;
+	}
+
+	@Autowired ( required = false ) @Qualifier ( "wideNodesSparql" )
+	public void setWideNodesSparql ( String wideNodesSparql )
+	{
+		this.wideNodesSparql = wideNodesSparql;
+	}
 	
 }
@@ -0,0 +1,33 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.impl.ResourceImpl;
+
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGNode;
+
+/**
+ * A node {@link Resource} which carries an already built {@link PGNode}. 
+ * 
+ * This is used by {@link PGNodeMakeProcessor} in the {@link PGNodeMakeProcessor#getWideNodesSparql() wide mode}, 
+ * to pass complete nodes to {@link PGNodeHandler}, through the same batches used for plain node IRIs.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+class PGNodeResource extends ResourceImpl
+{
+	private final PGNode pgNode;
+
+	PGNodeResource ( PGNode pgNode )
+	{
+		super ( NodeFactory.createURI ( pgNode.getIri () ), null );
+		this.pgNode = pgNode;
+	}
+
+	PGNode getPGNode ()
+	{
+		return pgNode;
+	}
+}
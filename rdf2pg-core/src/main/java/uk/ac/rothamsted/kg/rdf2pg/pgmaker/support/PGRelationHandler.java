@@ -1,10 +1,17 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.jena.query.QuerySolution;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
+import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
+
 /**
  * Similarly to {@link PGNodeHandler}, this is used by {@link PGMakerProcessor} to process
  * relation mappings from RDF and generate property graph relations on the target side.
@@ -17,8 +24,32 @@ import org.springframework.beans.factory.annotation.Qualifier;
 public abstract class PGRelationHandler extends PGEntityHandler<QuerySolution>
 {
 	private String relationTypesSparql, relationPropsSparql;
+	private Map<String, String> relationPropsPredicates;
+
+	
+	/**
+	 * Similarly to {@link PGNodeHandler#getPGNodes(Set)}, gets the relations for a batch of rows from the 
+	 * {@link #getRelationTypesSparql() relation types query}, populating their properties both from 
+	 * {@link #getRelationPropsSparql()} and {@link #getRelationPropsPredicates()}, when configured, and within
+	 * a single RDF read transaction.
+	 */
+	protected List<PGRelation> getPGRelations ( Set<QuerySolution> relRecords )
+	{
+		RdfDataManager rdfMgr = this.getRdfDataManager ();
 
+		return rdfMgr.calculateRead ( () -> 
+		{
+			List<PGRelation> result = new ArrayList<> ( relRecords.size () );
+			for ( QuerySolution row: relRecords )
+				result.add ( rdfMgr.getPGRelation ( row ) );
+			
+			rdfMgr.setPGRelationsProps ( result, this.getRelationPropsSparql () );
+			rdfMgr.addPGProps ( result, this.getRelationPropsPredicates () );
 	
+			return result;
+		});
+	}
+
 	/**
 	 * <p>A SPARQL that must return the variables: ?iri ?type ?fromIri ?toIri and distinct result rows (whether you use 
 	 * DISTINCT or not).</p>
@@ -65,4 +96,19 @@ public abstract class PGRelationHandler extends PGEntityHandler<QuerySolution>
 	{
 		this.relationPropsSparql = relationPropsSparql;
 	}
+
+	/**
+	 * Like {@link PGNodeHandler#getNodePropsPredicates()}, an alternative, or a complement to 
+	 * {@link #getRelationPropsSparql()}, based on direct predicate look-ups. Like the query, this is applied 
+	 * to the relation ?iri, and it only considers the default graph.
+	 */
+	public Map<String, String> getRelationPropsPredicates ()
+	{
+		return relationPropsPredicates;
+	}
+
+	public void setRelationPropsPredicates ( Map<String, String> relationPropsPredicates )
+	{
+		this.relationPropsPredicates = relationPropsPredicates;
+	}
 }
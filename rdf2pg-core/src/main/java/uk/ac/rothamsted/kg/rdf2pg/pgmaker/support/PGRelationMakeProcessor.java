@@ -35,8 +35,13 @@ public abstract class PGRelationMakeProcessor<RH extends PGRelationHandler> exte
 
 		// processNodeIris() passes the IRIs obtained from SPARQL to the IRI consumer set by the BatchProcessor. The latter
 		// pushes the IRI into a batch and submits a full batch to the parallel executor.
+		// With multiple producer partitions, the relations are consumed by multiple threads, see getProducerPartitions()
+		int partitions = this.getProducerPartitions ();
 		Consumer<Consumer<QuerySolution>> relIriProcessor = 
-			solProc -> rdfMgr.processRelationIris ( handler.getRelationTypesSparql (), solProc );
+			solProc -> rdfMgr.processRelationIris ( 
+				handler.getRelationTypesSparql (), partitions, this.getProducerExecutor (), 
+				this.getSynchronizedConsumer ( solProc ) 
+			);
 		
 		super.process ( relIriProcessor );
 		log.info ( "PG relations making ended" );
@@ -0,0 +1,25 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+/**
+ * <p>A batch job task that knows the size of its batch.</p>
+ *
+ * <p>This is used by the {@link PGMakerProcessor#getBatchTargetTime() adaptive batch sizing}, for processors
+ * that build their batches on their own and submit them to {@link PGMakerProcessor#setupExecutor() the
+ * executor}. For the other tasks, the processor takes the no. of items received since the previous
+ * submission as the batch size.</p>
+ *
+ * <p>If the task is also a {@link java.util.concurrent.Future}, a failed batch is reported to the
+ * sizer as such, so it's better to implement these tasks by extending
+ * {@link java.util.concurrent.FutureTask}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public interface SizedBatchTask extends Runnable
+{
+	/**
+	 * The no. of items in the task's batch.
+	 */
+	int getBatchSize ();
+}
@@ -0,0 +1,95 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An {@link ExecutorService} wrapper that limits the number of tasks that are submitted and not yet 
+ * completed (ie, queued or running).</p>
+ * 
+ * <p>When the limit is reached, {@link #execute(Runnable)} (and hence the submit methods) blocks the 
+ * invoker, until some task completes. This is used by {@link PGMakerProcessor#getMaxInFlightBatches()}, to 
+ * prevent the batch producer from piling up batches in memory when the target is slower than the 
+ * RDF source.</p>
+ * 
+ * <p>The limit is implemented by means of a {@link Semaphore}, which can be shared with other 
+ * instances, to have a limit that is global to all of them.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class ThrottledExecutorService extends DelegatingExecutorService
+{
+	private final Semaphore permits;
+	private final AtomicInteger inFlightTasks = new AtomicInteger ( 0 );
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
+	/**
+	 * @param permits the semaphore that limits the tasks in flight, one permit per task.
+	 */
+	public ThrottledExecutorService ( ExecutorService delegate, Semaphore permits )
+	{
+		super ( delegate );
+		this.permits = permits;
+	}
+
+	public ThrottledExecutorService ( ExecutorService delegate, int maxInFlightTasks )
+	{
+		this ( delegate, new Semaphore ( maxInFlightTasks ) );
+	}
+
+	@Override
+	public void execute ( Runnable task )
+	{
+		try 
+		{
+			if ( !permits.tryAcquire () ) 
+			{
+				log.trace ( "Max no. of tasks in flight reached, waiting" );
+				permits.acquire ();
+			}
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RejectedExecutionException ( "Interrupted while waiting to submit a task", ex );
+		}
+		
+		inFlightTasks.incrementAndGet ();
+		try
+		{
+			delegate.execute ( () -> 
+			{
+				try {
+					task.run ();
+				}
+				finally {
+					inFlightTasks.decrementAndGet ();
+					permits.release ();
+				}
+			});
+		}
+		catch ( RuntimeException ex ) 
+		{
+			// Rejected, so it won't run and won't release anything
+			inFlightTasks.decrementAndGet ();
+			permits.release ();
+			throw ex;
+		}
+	}
+
+	/**
+	 * A gauge of the tasks that were submitted and haven't completed yet, ie, the queue depth, including the 
+	 * running tasks.
+	 */
+	public int getInFlightTasks ()
+	{
+		return inFlightTasks.get ();
+	}
+}
@@ -1,21 +1,55 @@
 package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf;
 
-import static info.marcobrandizi.rdfutils.jena.JenaGraphUtils.JENAUTILS;
-
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.Syntax;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.syntaxtransform.QueryTransformOps;
+import org.apache.jena.system.Txn;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import info.marcobrandizi.rdfutils.jena.TDBEndPointHelper;
+import uk.ac.rothamsted.kg.rdf2pg.idconvert.CachingIri2IdConverter;
 import uk.ac.rothamsted.kg.rdf2pg.idconvert.DefaultIri2IdConverter;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeHandler;
 import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.PGNodeMakeProcessor;
@@ -40,9 +74,54 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.entities.PGRelation;
 @Component
 public class RdfDataManager extends TDBEndPointHelper
 {
+	/** Used by {@link #processSelectPartitioned(String, String, String, int, Executor, Consumer)} */
+	private static final int PARTITION_QUEUE_SIZE = 1000;
+	private static final QuerySolution END_OF_PARTITION = new QuerySolutionMap ();
+	
 	private Function<String, String> pgNodeLabelIdConverter = new DefaultIri2IdConverter ();
 	private Function<String, String> pgPropertyIdConverter = new DefaultIri2IdConverter (); 
 	private Function<String, String> pgRelationIdConverter = new DefaultIri2IdConverter ();
+
+	// What we actually use internally, the converters above wrapped by CachingIri2IdConverter, see the setters
+	private Function<String, String> cachedNodeLabelIdConverter = CachingIri2IdConverter.wrap ( pgNodeLabelIdConverter );
+	private Function<String, String> cachedPropertyIdConverter = CachingIri2IdConverter.wrap ( pgPropertyIdConverter );
+	private Function<String, String> cachedRelationIdConverter = CachingIri2IdConverter.wrap ( pgRelationIdConverter );
+	
+	/**
+	 * Mapping queries are always the same few strings, coming from the configuration, so we parse them once.
+	 * See {@link #getQuery(String)}.
+	 */
+	private final Map<String, Query> queryCache = new ConcurrentHashMap<> ();
+	
+	/**
+	 * The same queries, rewritten for {@link #processIriBatchSelect(String, String, Collection, BiConsumer)}, 
+	 * without the VALUES block.
+	 */
+	private final Map<String, Query> batchQueryCache = new ConcurrentHashMap<> ();
+
+	/**
+	 * See {@link #getLiteralConverters()}. 
+	 */
+	private final Map<String, Function<Node, Object>> literalConverters = new ConcurrentHashMap<> ();
+
+	private final AtomicLong queryCacheHits = new AtomicLong ();
+	private final AtomicLong queryCacheMisses = new AtomicLong ();
+	
+	/**
+	 * How many {@link #open(String)} calls are still to be closed. This is needed when multiple makers share this 
+	 * (singleton) manager concurrently (see {@link uk.ac.rothamsted.kg.rdf2pg.pgmaker.MultiConfigPGMaker#getConfigItemsParallelism()}), so that 
+	 * the dataset is actually closed by the last user only.
+	 * 
+	 * No initialiser here, since the parent's constructor invokes {@link #open(String)} before the initialisers 
+	 * of this class would run. 
+	 */
+	private int openCount;
+	
+	/** 
+	 * The (normalised) path of the currently open TDB, used to check that {@link #open(String)} isn't shared 
+	 * between different datasets. Same as above about the initialiser.
+	 */
+	private Path openTdbPath;
 		
 	public RdfDataManager () {
 	}
@@ -71,9 +150,10 @@ public class RdfDataManager extends TDBEndPointHelper
 		// If this is omitted, nodes will get the default label only.
 		if ( labelsSparql != null )
 		{
-			Function<String, String> labelIdConverter = this.getPGNodeLabelIdConverter ();
+			Function<String, String> labelIdConverter = this.cachedNodeLabelIdConverter;
 						
 			this.processSelect (
+				"getPGNode()",
 				labelsSparql,
 				row -> pgNode.addLabel ( this.getPGId ( row.get ( "label" ), labelIdConverter ) ),
 				params
@@ -87,6 +167,48 @@ public class RdfDataManager extends TDBEndPointHelper
 		
 	} // getPGNode()
 
+	/**
+	 * <p>The batch version of {@link #getPGNode(Resource, String, String)}.</p>
+	 * 
+	 * <p>Rather than running the labels and properties queries once per node, this binds all the nodes 
+	 * in the parameter at once, by means of a VALUES block over the ?iri variable, and then dispatches the 
+	 * query results to the {@link PGNode}s they refer to. This way, a batch of nodes costs two SPARQL executions 
+	 * only. See {@link #processIriBatchSelect(String, String, Collection, BiConsumer)} for details.</p>
+	 * 
+	 * @return the nodes corresponding to the parameter, in no particular order. 
+	 */
+	public Collection<PGNode> getPGNodes ( Set<Resource> nodeResources, String labelsSparql, String propsSparql )
+	{
+		ensureOpen ();
+
+		Map<String, PGNode> pgNodes = new HashMap<> ();
+		for ( Resource nodeRes: nodeResources )
+		{
+			String iri = nodeRes.getURI ();
+			pgNodes.put ( iri, new PGNode ( iri ) );
+		}
+		if ( pgNodes.isEmpty () ) return pgNodes.values ();
+		
+		// As above, if omitted, nodes will get the default label only.
+		if ( labelsSparql != null )
+		{
+			Function<String, String> labelIdConverter = this.cachedNodeLabelIdConverter;
+			
+			this.processIriBatchSelect ( 
+				"getPGNodes()",
+				labelsSparql, 
+				pgNodes.keySet (),
+				(iri, row) -> pgNodes.get ( iri ).addLabel ( this.getPGId ( row.get ( "label" ), labelIdConverter ) )
+			);
+		}
+		
+		this.addPGProps ( pgNodes.values (), propsSparql );
+		
+		return pgNodes.values ();
+		
+	} // getPGNodes()
+	
+	
 	/**
 	 * Just a variant of {@link #getPGNode(Resource, String, String)}.
 	 */
@@ -135,23 +257,271 @@ public class RdfDataManager extends TDBEndPointHelper
 		// It may be omitted, if you don't have any property except the IRI.
 		if ( propsSparql == null ) return;
 		
-		Function<String, String> propIdConverter = this.getPGPropertyIdConverter ();
+		Function<String, String> propIdConverter = this.cachedPropertyIdConverter;
 		
 		this.processSelect ( 
+			"addPGProps()",
 			propsSparql,
-			row ->
-			{
-				String propName = this.getPGId ( row.get ( "name" ), propIdConverter );
-				if ( propName == null ) throw new IllegalArgumentException ( 
-					"Null property name for " + cyEnt.getIri () 
-				);
-				
-				String propValue = JENAUTILS.literal2Value ( row.getLiteral ( "value" ) ).get ();
-				cyEnt.addPropValue ( propName, propValue );
-			},
+			row -> this.addPGProp ( cyEnt, row, propIdConverter ),
 			params
 		);
 	} // addPGProps()
+
+	/**
+	 * The batch version of {@link #addPGProps(PGEntity, String)}, which works like 
+	 * {@link #getPGNodes(Set, String, String)}. 
+	 * 
+	 * Entities sharing the same IRI (eg, the same relation IRI reported with different types) all get the 
+	 * properties associated to that IRI. 
+	 */
+	protected void addPGProps ( Collection<? extends PGEntity> pgEntities, String propsSparql )
+	{
+		if ( propsSparql == null || pgEntities.isEmpty () ) return;
+		
+		Map<String, List<PGEntity>> iri2Entities = new HashMap<> ();
+		for ( PGEntity pgEnt: pgEntities )
+			iri2Entities.computeIfAbsent ( pgEnt.getIri (), iri -> new ArrayList<> ( 1 ) ).add ( pgEnt );
+		
+		Function<String, String> propIdConverter = this.cachedPropertyIdConverter;
+		
+		this.processIriBatchSelect ( 
+			"addPGProps()",
+			propsSparql, 
+			iri2Entities.keySet (),
+			(iri, row) -> {
+				for ( PGEntity pgEnt: iri2Entities.get ( iri ) ) 
+					this.addPGProp ( pgEnt, row, propIdConverter );
+			}
+		);
+	}
+	
+	/**
+	 * Used by the methods above, adds a property from a row of a property query, which must have the 
+	 * ?name and ?value variables.
+	 */
+	private void addPGProp ( PGEntity cyEnt, QuerySolution row, Function<String, String> propIdConverter )
+	{
+		String propName = this.getPGId ( row.get ( "name" ), propIdConverter );
+		if ( propName == null ) throw new IllegalArgumentException ( 
+			"Null property name for " + cyEnt.getIri () 
+		);
+		
+		Literal propLiteral = row.getLiteral ( "value" );
+		if ( propLiteral == null ) throw new IllegalArgumentException ( 
+			"Null value for the property \"" + propName + "\" of " + cyEnt.getIri () 
+		);
+		
+		Object propValue = this.getLiteralValue ( propLiteral.asNode () );
+		cyEnt.addPropValue ( propName, propValue );
+	}
+	
+	
+	/**
+	 * <p>Adds labels to a set of nodes, taking them from the values of a given predicate, eg, rdf:type.</p>
+	 * 
+	 * <p>This is a lightweight alternative to a {@link PGNodeHandler#getLabelsSparql() labels query}, which looks 
+	 * up the subject/predicate pattern directly in the TDB indices, without going through the SPARQL engine. 
+	 * As for the query, the values are converted by the {@link #getPGNodeLabelIdConverter()}.</p>
+	 * 
+	 * <p>Only the triples in the default graph ({@link Quad#defaultGraphIRI}) are considered, named graphs 
+	 * are ignored.</p>
+	 * 
+	 * <p>It doesn't do anything if the predicate is null.</p>
+	 */
+	public void addPGLabels ( Collection<PGNode> pgNodes, String labelsPredicate )
+	{
+		if ( labelsPredicate == null || pgNodes.isEmpty () ) return;
+		
+		ensureOpen ();
+		Function<String, String> labelIdConverter = this.cachedNodeLabelIdConverter;
+		Node predicate = NodeFactory.createURI ( labelsPredicate );
+		
+		this.executeRead ( () -> 
+		{
+			for ( PGNode pgNode: pgNodes )
+				this.processObjects ( pgNode.getIri (), predicate, o -> 
+				{
+					String label = o.isURI () ? o.getURI () : o.isLiteral () ? o.getLiteralLexicalForm () : null;
+					if ( label == null ) return;
+					if ( labelIdConverter != null ) label = labelIdConverter.apply ( label );
+					pgNode.addLabel ( label );
+				});
+		});
+	}
+	
+	/**
+	 * <p>Similarly to {@link #addPGLabels(Collection, String)}, adds properties to a set of nodes or relations, 
+	 * by directly looking up the values of the predicates in the parameter map.</p>
+	 * 
+	 * <p>This is an alternative to a property query like {@link PGNodeHandler#getNodePropsSparql()}, for the common
+	 * case where such query would just be a list of predicates to take literal values from. As above, only 
+	 * the default graph is considered.</p> 
+	 * 
+	 * @param propsPredicates a map of predicate IRI -&gt; PG property name. If a name is null or empty, it's
+	 * computed from the predicate IRI, using the {@link #getPGPropertyIdConverter()}. Non-literal values are 
+	 * ignored. If this is null, the method doesn't do anything.
+	 */
+	public void addPGProps ( Collection<? extends PGEntity> pgEntities, Map<String, String> propsPredicates )
+	{
+		if ( propsPredicates == null || propsPredicates.isEmpty () || pgEntities.isEmpty () ) return;
+
+		ensureOpen ();
+		Function<String, String> propIdConverter = this.cachedPropertyIdConverter;
+
+		Map<Node, String> pred2Names = new HashMap<> ();
+		propsPredicates.forEach ( (predIri, name) -> 
+		{
+			if ( name == null || name.isEmpty () ) 
+				name = propIdConverter == null ? predIri : propIdConverter.apply ( predIri );
+			pred2Names.put ( NodeFactory.createURI ( predIri ), name );
+		});
+		
+		this.executeRead ( () -> 
+		{
+			for ( PGEntity pgEnt: pgEntities )
+				pred2Names.forEach ( (predicate, name) -> 
+					this.processObjects ( pgEnt.getIri (), predicate, o -> {
+						if ( o.isLiteral () ) pgEnt.addPropValue ( name, this.getLiteralValue ( o ) );
+					})
+			);
+		});
+	}
+	
+	/**
+	 * <p>Converts an RDF literal into a PG property value, using the {@link #getLiteralConverters() converter}
+	 * associated to the literal's datatype.</p>
+	 * 
+	 * <p>If there isn't any, it returns the lexical form of the literal (which is the default for all types, 
+	 * including language-tagged strings).</p> 
+	 */
+	public Object getLiteralValue ( Node literal )
+	{
+		String datatypeIri = literal.getLiteralDatatypeURI ();
+		Function<Node, Object> converter = datatypeIri == null ? null : literalConverters.get ( datatypeIri );
+		return converter == null ? literal.getLiteralLexicalForm () : converter.apply ( literal );
+	}
+
+	/**
+	 * <p>Literal converters, indexed by datatype IRI, used to turn RDF literal values into PG values in 
+	 * property mappings.</p>
+	 * 
+	 * <p>This is empty by default, which means that all the values are converted into their lexical form. 
+	 * You can use {@link XsdLiteralConverters} to map the common XSD types onto native values (see 
+	 * {@link #setNativeLiteralConversion(boolean)}), or add your own converters.</p>
+	 * 
+	 * <p>Beware that, having converted values, a multi-value property might get values of different types, 
+	 * which some targets (eg, Neo4j) don't support.</p>
+	 * 
+	 * <p>The returned map is thread-safe and it's the one actually used for the conversions, so you can 
+	 * modify it directly, before starting a conversion.</p>
+	 */
+	public Map<String, Function<Node, Object>> getLiteralConverters ()
+	{
+		return literalConverters;
+	}
+
+	/**
+	 * Adds (or replaces) the converters in the parameter to the current ones. This isn't auto-wired, since
+	 * Spring would interpret a map as a collection of beans.
+	 */
+	public void setLiteralConverters ( Map<String, Function<Node, Object>> literalConverters )
+	{
+		this.literalConverters.putAll ( literalConverters );
+	}
+	
+	/**
+	 * If true, adds {@link XsdLiteralConverters the native XSD converters} to the current 
+	 * {@link #getLiteralConverters() literal converters}, if false, removes them.
+	 */
+	@Autowired ( required = false ) @Qualifier ( "nativeLiteralConversion" )
+	public void setNativeLiteralConversion ( boolean isEnabled )
+	{
+		if ( isEnabled ) 
+			this.literalConverters.putAll ( XsdLiteralConverters.getConverters () );
+		else
+			this.literalConverters.keySet ().removeAll ( XsdLiteralConverters.getConverters ().keySet () );
+	}
+	
+	
+	/**
+	 * Used above to pass the objects in the default graph matching (subjectIri, predicate, ?o) to the action. 
+	 * This must run within a read transaction.
+	 */
+	private void processObjects ( String subjectIri, Node predicate, Consumer<Node> action )
+	{
+		Iterator<Quad> itr = this.getDataSet ().asDatasetGraph ().find ( 
+			Quad.defaultGraphIRI, NodeFactory.createURI ( subjectIri ), predicate, Node.ANY 
+		);
+		try {
+			itr.forEachRemaining ( q -> action.accept ( q.getObject () ) );
+		}
+		finally {
+			Iter.close ( itr );
+		}
+	}
+	
+	/**
+	 * <p>Runs a query that is parameterised on the ?iri variable (eg, a node labels or properties query) over 
+	 * a batch of IRIs, passing each result row to the action, together with the IRI it refers to.</p>
+	 * 
+	 * <p>In most cases, this is done with one query execution, by prepending a VALUES block over ?iri to the 
+	 * query's WHERE clause. Having the VALUES block at the beginning allows ARQ to evaluate the rest of the 
+	 * pattern with ?iri already bound (ie, using the TDB indices), rather than joining a full scan 
+	 * with the bindings. Also, ?iri is added to the projected variables when it isn't there already, 
+	 * since we need it to know which entity a result row refers to.</p>
+	 * 
+	 * <p>Queries whose semantics would change under a batch binding (ie, those having LIMIT, OFFSET, 
+	 * GROUP BY, aggregates, or an outer VALUES clause) are instead run once per IRI, in the traditional 
+	 * way.</p>
+	 * 
+	 */
+	protected void processIriBatchSelect ( 
+		String logPrefix, String sparql, Collection<String> iris, BiConsumer<String, QuerySolution> action 
+	)
+	{
+		Query query = this.getQuery ( sparql );
+		
+		if ( query.hasLimit () || query.hasOffset () || query.hasGroupBy () || query.hasAggregators () 
+				 || query.hasValues () )
+		{
+			Dataset dataSet = this.getDataSet ();
+			for ( String iri: iris )
+			{
+				QuerySolutionMap params = new QuerySolutionMap ();
+				params.add ( "iri", dataSet.getUnionModel ().getResource ( iri ) );
+				this.processSelect ( logPrefix, query, row -> action.accept ( iri, row ), params );
+			}
+			return;
+		}
+		
+		Var iriVar = Var.alloc ( "iri" );
+
+		Query batchTemplate = batchQueryCache.computeIfAbsent ( sparql, s -> 
+		{
+			Query result = query.cloneQuery ();
+			if ( !result.isQueryResultStar () && !result.getProjectVars ().contains ( iriVar ) )
+				result.addResultVar ( iriVar );
+			result.setResultVars ();
+			return result;
+		});
+				
+		ElementData iriValues = new ElementData ();
+		iriValues.add ( iriVar );
+		for ( String iri: iris )
+			iriValues.add ( BindingFactory.binding ( iriVar, NodeFactory.createURI ( iri ) ) );
+		
+		ElementGroup batchPattern = new ElementGroup ();
+		batchPattern.addElement ( iriValues );
+		batchPattern.addElement ( batchTemplate.getQueryPattern () );
+
+		// The template is shared, so we work on a copy, which doesn't touch the original pattern
+		Query batchQuery = QueryTransformOps.shallowCopy ( batchTemplate );
+		batchQuery.setQueryPattern ( batchPattern );
+		
+		this.processSelect ( 
+			logPrefix, batchQuery, row -> action.accept ( row.getResource ( "iri" ).getURI (), row ), null 
+		);
+	}
 	
 	/**
 	 * Does something with the results coming from {@link PGNodeMakeProcessor#getNodeIrisSparql() node IRI query}.
@@ -160,10 +530,76 @@ public class RdfDataManager extends TDBEndPointHelper
 	 */
 	public long processNodeIris ( String nodeIrisSparql, Consumer<Resource> action )
 	{
-		return this.processSelect ( "processNodeIris()", nodeIrisSparql, row -> action.accept ( row.getResource ( "iri" ) ) );
+		return this.processSelect ( 
+			"processNodeIris()", nodeIrisSparql, row -> action.accept ( row.getResource ( "iri" ) ), null 
+		);
 	}
 	
 	
+	/**
+	 * <p>Builds complete {@link PGNode}s from a {@link PGNodeMakeProcessor#getWideNodesSparql() wide node query}, 
+	 * which must return rows of ?iri ?label ?name ?value, where ?label and ?name/?value can be unbound, and where the
+	 * rows about the same ?iri are consecutive (ie, use ORDER BY ?iri). ?name and ?value must be either both bound
+	 * or both unbound, else an {@link IllegalArgumentException} is thrown.</p>
+	 * 
+	 * <p>Rows are grouped on the fly and a node is passed to the action as soon as the ?iri changes, so this 
+	 * doesn't keep more than a node in memory and no per-node query is needed.</p>
+	 * 
+	 * @return the number of nodes processed.
+	 */
+	public long processWideNodes ( String wideNodesSparql, Consumer<PGNode> action )
+	{
+		Function<String, String> labelIdConverter = this.cachedNodeLabelIdConverter;
+		Function<String, String> propIdConverter = this.cachedPropertyIdConverter;
+		
+		// The node currently being built and the nodes count
+		PGNode[] currentNode = new PGNode [ 1 ];
+		long[] ct = new long [] { 0 };
+		
+		this.processSelect ( "processWideNodes()", wideNodesSparql, row -> 
+		{
+			String iri = row.getResource ( "iri" ).getURI ();
+			PGNode pgNode = currentNode [ 0 ];
+			
+			if ( pgNode == null || !iri.equals ( pgNode.getIri () ) )
+			{
+				// New node, the previous one is complete
+				if ( pgNode != null ) {
+					action.accept ( pgNode );
+					ct [ 0 ]++;
+				}
+				currentNode [ 0 ] = pgNode = new PGNode ( iri );
+			}
+			
+			pgNode.addLabel ( this.getPGId ( row.get ( "label" ), labelIdConverter ) );
+			// A half-bound pair is reported by addPGProp()
+			if ( row.contains ( "name" ) || row.contains ( "value" ) ) this.addPGProp ( pgNode, row, propIdConverter );
+		}, null );
+		
+		if ( currentNode [ 0 ] != null ) {
+			action.accept ( currentNode [ 0 ] );
+			ct [ 0 ]++;
+		}
+		
+		return ct [ 0 ];
+	}
+	
+	
+	/**
+	 * The partitioned version of {@link #processNodeIris(String, Consumer)}, based on 
+	 * {@link #processSelectPartitioned(String, String, String, int, Executor, Consumer)}. The action is invoked by 
+	 * multiple threads.
+	 */
+	public long processNodeIris ( 
+		String nodeIrisSparql, int partitions, Executor executor, Consumer<Resource> action 
+	)
+	{
+		return this.processSelectPartitioned ( 
+			"processNodeIris()", nodeIrisSparql, "iri", partitions, executor, 
+			row -> action.accept ( row.getResource ( "iri" ) ) 
+		);
+	}
+	
 	/**
 	 * Similarly to {@link #getPGNode(Resource, String, String)}, uses a binding (i.e., row) from a 
 	 * {@link PGRelationHandler#getRelationTypesSparql() relation type query} and creates a new {@link PGRelation}
@@ -174,7 +610,7 @@ public class RdfDataManager extends TDBEndPointHelper
 		Resource relRes = relRow.get ( "iri" ).asResource ();
 		PGRelation pgRelation = new PGRelation ( relRes.getURI () );
 		
-		pgRelation.setType ( this.getPGId ( relRow.get ( "type" ), this.getPGRelationTypeIdConverter () ) );
+		pgRelation.setType ( this.getPGId ( relRow.get ( "type" ), this.cachedRelationIdConverter ) );
 
 		pgRelation.setFromIri ( relRow.get ( "fromIri" ).asResource ().getURI () );
 		pgRelation.setToIri ( relRow.get ( "toIri" ).asResource ().getURI () );
@@ -192,6 +628,17 @@ public class RdfDataManager extends TDBEndPointHelper
 		this.addPGProps ( cyRelation, propsSparql );
 	}
 	
+	/**
+	 * The batch version of {@link #setPGRelationProps(PGRelation, String)}, which gets the properties for all the 
+	 * relations in the parameter with a single query execution, in the same way as 
+	 * {@link #getPGNodes(Set, String, String)} does.
+	 */
+	public void setPGRelationsProps ( Collection<PGRelation> cyRelations, String propsSparql )
+	{
+		ensureOpen ();
+		this.addPGProps ( cyRelations, propsSparql );
+	}
+	
 	/**
 	 * Similarly to {@link #processNodeIris(String, Consumer)}, does something with the results from a 
 	 * {@link PGRelationHandler#getRelationTypesSparql() relation types query}.
@@ -199,7 +646,20 @@ public class RdfDataManager extends TDBEndPointHelper
 	 */
 	public long processRelationIris ( String relationIrisSparql, Consumer<QuerySolution> action )
 	{
-		return processSelect ( "processRelationIris()", relationIrisSparql, action );
+		return processSelect ( "processRelationIris()", relationIrisSparql, action, null );
+	}
+	
+	/**
+	 * The partitioned version of {@link #processRelationIris(String, Consumer)}, see 
+	 * {@link #processNodeIris(String, int, Executor, Consumer)}.
+	 */
+	public long processRelationIris ( 
+		String relationIrisSparql, int partitions, Executor executor, Consumer<QuerySolution> action 
+	)
+	{
+		return processSelectPartitioned ( 
+			"processRelationIris()", relationIrisSparql, "iri", partitions, executor, action 
+		);
 	}
 	
 	/** 
@@ -212,10 +672,15 @@ public class RdfDataManager extends TDBEndPointHelper
 		return pgNodeLabelIdConverter;
 	}
 
+	/**
+	 * Internally, the converter is used through a {@link CachingIri2IdConverter} wrapper (the same happens with 
+	 * the other converter setters), while the getter returns the converter that was set here.
+	 */
 	@Autowired ( required = false ) @Qualifier ( "nodeLabelIdConverter" )
 	public void setPGNodeLabelIdConverter ( Function<String, String> labelIdConverter )
 	{
 		this.pgNodeLabelIdConverter = labelIdConverter;
+		this.cachedNodeLabelIdConverter = CachingIri2IdConverter.wrap ( labelIdConverter );
 	}
 	
 	/**
@@ -232,6 +697,7 @@ public class RdfDataManager extends TDBEndPointHelper
 	public void setPGRelationTypeIdConverter ( Function<String, String> relationIdConverter )
 	{
 		this.pgRelationIdConverter = relationIdConverter;
+		this.cachedRelationIdConverter = CachingIri2IdConverter.wrap ( relationIdConverter );
 	}
 
 
@@ -250,11 +716,14 @@ public class RdfDataManager extends TDBEndPointHelper
 	public void setPGPropertyIdConverter ( Function<String, String> propertyIdConverter )
 	{
 		this.pgPropertyIdConverter = propertyIdConverter;
+		this.cachedPropertyIdConverter = CachingIri2IdConverter.wrap ( propertyIdConverter );
 	}
 
 	/**
 	 * No action for the case that sparqlSelect is null. 
 	 * This is useful in rdf2pg, to ignore the conversion of certain types.
+	 * 
+	 * Differently than the parent class, this uses {@link #getQuery(String) cached} parsed queries.
 	 */
 	@Override
 	public long processSelect (
@@ -265,7 +734,283 @@ public class RdfDataManager extends TDBEndPointHelper
 			log.debug ( "null SPARQL for {}, skipping", logPrefix );
 			return 0;
 		}
-		return super.processSelect ( logPrefix, sparqlSelect, action, params );
+		return this.processSelect ( logPrefix, this.getQuery ( sparqlSelect ), action, params );
+	}
+	
+	/**
+	 * Runs an already parsed query, typically coming from {@link #getQuery(String)}, passing the initial 
+	 * bindings in params (which can be null) and the result rows to the action. 
+	 * 
+	 * @return the number of rows processed.
+	 */
+	public long processSelect (
+		String logPrefix, Query query, Consumer<QuerySolution> action, QuerySolutionMap params 
+	)
+	{
+		ensureOpen ();
+		Dataset ds = this.getDataSet ();
+		
+		if ( log.isTraceEnabled () ) log.trace ( "{}: running the SPARQL:\n{}", logPrefix, query );
+		
+		return this.calculateRead ( () -> 
+		{
+			try ( QueryExecution qx = QueryExecutionFactory.create ( query, ds, params ) )
+			{
+				long ct = 0;
+				for ( ResultSet rs = qx.execSelect (); rs.hasNext (); ct++ )
+					action.accept ( rs.next () );
+				return ct;
+			}
+		});
+	}
+	
+	/**
+	 * <p>Runs a query and processes its results in parallel, splitting them into partitions.</p>
+	 * 
+	 * <p>The query runs once, in the current thread, and each result row is routed to one of n partition 
+	 * queues, based on the hash of the partitionVar value, so that the rows having the same value always 
+	 * go to the same partition. Each queue is consumed by a task running on the executor, which invokes 
+	 * the action, so the action must be thread-safe. The queues are bounded, ie, the query blocks when 
+	 * the consumers are slower than it.</p>
+	 * 
+	 * <p>The rows are copied before being queued, since those coming from TDB might not be usable outside 
+	 * of the query's thread and transaction.</p>
+	 * 
+	 * <p>If partitions is &lt;= 1, this just runs the query in the current thread, passing the rows to the 
+	 * action directly.</p>
+	 * 
+	 * @param executor where the partition consumers run. This must be able to run all of them concurrently, 
+	 * eg, a pool with at least n threads, and it's up to the caller to create it once and shut it down.
+	 * 
+	 * @return the total number of rows processed.
+	 */
+	public long processSelectPartitioned ( 
+		String logPrefix, String sparql, String partitionVar, int partitions, Executor executor, 
+		Consumer<QuerySolution> action 
+	)
+	{
+		if ( sparql == null ) {
+			log.debug ( "null SPARQL for {}, skipping", logPrefix );
+			return 0;
+		}
+		
+		Query query = this.getQuery ( sparql );
+		if ( partitions <= 1 ) return this.processSelect ( logPrefix, query, action, null );
+
+		log.debug ( "{}: running the query with {} partitions", logPrefix, partitions );
+		
+		List<BlockingQueue<QuerySolution>> queues = new ArrayList<> ( partitions );
+		AtomicReference<Throwable> consumerError = new AtomicReference<> ();
+		CompletableFuture<?>[] consumers = new CompletableFuture<?> [ partitions ];
+		
+		for ( int i = 0; i < partitions; i++ )
+		{
+			BlockingQueue<QuerySolution> queue = new ArrayBlockingQueue<> ( PARTITION_QUEUE_SIZE );
+			queues.add ( queue );
+			consumers [ i ] = CompletableFuture.runAsync ( 
+				() -> consumePartition ( queue, action, consumerError ), executor 
+			);
+		}
+		
+		long ct = 0;
+		try
+		{
+			ct = this.processSelect ( logPrefix, query, row -> 
+			{
+				if ( consumerError.get () != null ) throw new IllegalStateException ( 
+					logPrefix + ": error while running a partitioned query: " + consumerError.get ().getMessage (), 
+					consumerError.get () 
+				);
+				
+				RDFNode partitionNode = row.get ( partitionVar );
+				int partition = partitionNode == null ? 0 : Math.floorMod ( partitionNode.hashCode (), partitions );
+				
+				QuerySolutionMap rowCopy = new QuerySolutionMap ();
+				rowCopy.addAll ( row );
+				putPartitionRow ( queues.get ( partition ), rowCopy, logPrefix );
+			}, null );
+		}
+		finally 
+		{
+			for ( BlockingQueue<QuerySolution> queue: queues )
+				putPartitionRow ( queue, END_OF_PARTITION, logPrefix );
+		}
+		
+		try {
+			CompletableFuture.allOf ( consumers ).get ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new IllegalStateException ( logPrefix + ": interrupted while running a partitioned query", ex );
+		}
+		catch ( ExecutionException ex ) 
+		{
+			Throwable cause = ex.getCause ();
+			if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+			throw new IllegalStateException ( 
+				logPrefix + ": error while running a partitioned query: " + cause.getMessage (), cause 
+			);
+		}
+		
+		return ct;
+	}
+	
+	/**
+	 * Used by {@link #processSelectPartitioned(String, String, String, int, Executor, Consumer)} to pass a 
+	 * partition's rows to the action. If the action fails, the error is recorded, so that the query stops, and 
+	 * the rest of the queue is discarded, so that the query doesn't block on it.
+	 */
+	private static void consumePartition ( 
+		BlockingQueue<QuerySolution> queue, Consumer<QuerySolution> action, AtomicReference<Throwable> error 
+	)
+	{
+		try
+		{
+			for ( QuerySolution row; ( row = queue.take () ) != END_OF_PARTITION; )
+			{
+				if ( error.get () != null ) continue;
+				try {
+					action.accept ( row );
+				}
+				catch ( RuntimeException | Error ex ) {
+					error.compareAndSet ( null, ex );
+				}
+			}
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			error.compareAndSet ( null, ex );
+		}
+		
+		Throwable ex = error.get ();
+		if ( ex instanceof RuntimeException ) throw (RuntimeException) ex;
+		if ( ex instanceof Error ) throw (Error) ex;
+		if ( ex != null ) throw new IllegalStateException ( "Partition consumer interrupted", ex );
+	}
+	
+	private static void putPartitionRow ( BlockingQueue<QuerySolution> queue, QuerySolution row, String logPrefix )
+	{
+		try {
+			queue.put ( row );
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new IllegalStateException ( logPrefix + ": interrupted while running a partitioned query", ex );
+		}
+	}
+	
+	/**
+	 * <p>Runs an action within a read transaction on the underlining dataset.</p>
+	 * 
+	 * <p>If the current thread is already in a transaction, this is reused, without starting a new one. 
+	 * All the read operations in this class work this way, so you can wrap a sequence of them with this method 
+	 * (eg, all the operations about a batch of nodes), and have them running in one transaction only, instead of
+	 * one per operation.</p>
+	 */
+	public <V> V calculateRead ( Supplier<V> action )
+	{
+		ensureOpen ();
+		// Txn checks if there is a transaction already and does begin/end only if there isn't.
+		return Txn.calculateRead ( this.getDataSet (), action );
+	}
+
+	/**
+	 * The {@link Runnable} version of {@link #calculateRead(Supplier)}.
+	 */
+	public void executeRead ( Runnable action )
+	{
+		ensureOpen ();
+		Txn.executeRead ( this.getDataSet (), action );
+	}
+	
+	/**
+	 * <p>Gets the parsed version of a SPARQL query, parsing it only the first time it's seen.</p>
+	 * 
+	 * <p>The mapping queries are run many times (eg, the node properties query is run for every node batch), 
+	 * so this saves a lot of parsing. The returned query is shared between threads and must not be modified, 
+	 * use {@link Query#cloneQuery()} if you need a variant of it.</p> 
+	 * 
+	 * <p>Note that we can't cache the ARQ algebra too, since the query engine builds the execution plan after 
+	 * having substituted the initial bindings (eg, ?iri), which change at every execution.</p>
+	 */
+	public Query getQuery ( String sparql )
+	{
+		Query result = queryCache.get ( sparql );
+		if ( result != null ) {
+			queryCacheHits.incrementAndGet ();
+			return result;
+		}
+		
+		return queryCache.computeIfAbsent ( sparql, s -> 
+		{
+			queryCacheMisses.incrementAndGet ();
+			Query q = QueryFactory.create ( s, Syntax.syntaxARQ );
+			// This is computed lazily and we want it done before the query is shared between threads
+			q.setResultVars ();
+			return q;
+		});
+	}
+
+	/**
+	 * The number of times {@link #getQuery(String)} found an already parsed query.
+	 */
+	public long getQueryCacheHits ()
+	{
+		return queryCacheHits.get ();
+	}
+
+	/**
+	 * The number of times {@link #getQuery(String)} had to parse a query.
+	 */
+	public long getQueryCacheMisses ()
+	{
+		return queryCacheMisses.get ();
+	}
+	
+	/**
+	 * Opens the TDB, unless it was already open by a previous invocation that isn't closed yet. In the latter 
+	 * case, just counts one more user of the dataset, see {@link #close()}.
+	 * 
+	 * @throws IllegalStateException if the manager is already open with a different TDB path, since we 
+	 * can't serve two datasets at the same time.
+	 */
+	@Override
+	public synchronized void open ( String tdbPath )
+	{
+		Path path = Paths.get ( tdbPath ).toAbsolutePath ().normalize ();
+		if ( openCount > 0 )
+		{
+			if ( !path.equals ( openTdbPath ) ) throw new IllegalStateException ( 
+				"Can't open the RDF data manager on \"" + tdbPath + "\", it's already open on \"" + openTdbPath + "\"" 
+			);
+			openCount++;
+			return;
+		}
+		
+		super.open ( tdbPath );
+		openTdbPath = path;
+		openCount = 1;
+	}
+
+	/**
+	 * Closes the TDB when it's the last pending {@link #open(String)}, else it just decreases the users count.
+	 * Logs the query cache stats before closing. 
+	 */
+	@Override
+	public synchronized void close ()
+	{
+		if ( openCount > 1 ) {
+			openCount--;
+			return;
+		}
+		openCount = 0;
+		openTdbPath = null;
+		
+		log.info ( 
+			"SPARQL query cache, {} hit(s), {} miss(es), {} cached queries", 
+			queryCacheHits.get (), queryCacheMisses.get (), queryCache.size () 
+		);
+		super.close ();
 	}
 	
 }
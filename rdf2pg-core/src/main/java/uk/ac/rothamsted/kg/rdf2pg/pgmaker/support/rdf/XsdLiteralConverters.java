@@ -0,0 +1,105 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+
+/**
+ * <p>Literal converters for {@link RdfDataManager#getLiteralConverters()}, which map common XSD types to 
+ * native Java values, ie, numbers, booleans and date/times, rather than their lexical form.</p>
+ * 
+ * <p>Values that can't be parsed (ie, ill-typed literals) are returned as their lexical form. Note that 
+ * xsd:decimal is converted into a double, which might lose precision.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class XsdLiteralConverters
+{
+	private static final Map<String, Function<Node, Object>> CONVERTERS;
+	
+	static
+	{
+		Map<String, Function<Node, Object>> converters = new HashMap<> ();
+		
+		Stream.of ( 
+			XSDDatatype.XSDinteger, XSDDatatype.XSDint, XSDDatatype.XSDlong, XSDDatatype.XSDshort, XSDDatatype.XSDbyte,
+			XSDDatatype.XSDnonNegativeInteger, XSDDatatype.XSDpositiveInteger, 
+			XSDDatatype.XSDnonPositiveInteger, XSDDatatype.XSDnegativeInteger,
+			XSDDatatype.XSDunsignedInt, XSDDatatype.XSDunsignedShort, XSDDatatype.XSDunsignedByte
+		)
+		.forEach ( dt -> converters.put ( dt.getURI (), lexicalConverter ( Long::valueOf ) ) );
+
+		Stream.of ( XSDDatatype.XSDdouble, XSDDatatype.XSDfloat, XSDDatatype.XSDdecimal )
+		.forEach ( dt -> converters.put ( dt.getURI (), lexicalConverter ( Double::valueOf ) ) );
+		
+		converters.put ( XSDDatatype.XSDboolean.getURI (), XsdLiteralConverters::convertBoolean );
+		
+		converters.put ( 
+			XSDDatatype.XSDdateTime.getURI (), 
+			lexicalConverter ( lex -> DateTimeFormatter.ISO_DATE_TIME.parseBest ( lex, OffsetDateTime::from, LocalDateTime::from ) ) 
+		);
+		converters.put ( XSDDatatype.XSDdate.getURI (), lexicalConverter ( LocalDate::parse ) );
+		
+		CONVERTERS = Collections.unmodifiableMap ( converters );
+	}
+	
+	private XsdLiteralConverters () {}
+	
+	/**
+	 * The converters, indexed by datatype IRI. This is read-only, make a copy if you need to change it.
+	 */
+	public static Map<String, Function<Node, Object>> getConverters ()
+	{
+		return CONVERTERS;
+	}
+	
+	/**
+	 * Only the canonical xsd:boolean values are converted, anything else (eg, "yes", "1 ") is ill-typed and
+	 * it's returned as-is, like for the other types, rather than becoming false.
+	 */
+	private static Object convertBoolean ( Node literal )
+	{
+		String lex = literal.getLiteralLexicalForm ();
+		switch ( lex )
+		{
+			case "true":
+			case "1":
+				return true;
+			case "false":
+			case "0":
+				return false;
+			default:
+				return lex;
+		}
+	}
+	
+	/**
+	 * Builds a converter from a function of the literal's lexical value, which falls back to the lexical value 
+	 * itself when the function fails.
+	 */
+	private static Function<Node, Object> lexicalConverter ( Function<String, Object> parser )
+	{
+		return literal -> 
+		{
+			String lex = literal.getLiteralLexicalForm ().trim ();
+			try {
+				return parser.apply ( lex );
+			}
+			catch ( NumberFormatException | DateTimeParseException ex ) {
+				return literal.getLiteralLexicalForm ();
+			}
+		};
+	}
+}
@@ -22,8 +22,10 @@ import uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf.RdfDataManager;
  */
 public class DataTestUtils
 {
+	public final static String SPARQL_NODE_IRIS;
 	public final static String SPARQL_NODE_LABELS;
 	public final static String SPARQL_NODE_PROPS;
+	public final static String SPARQL_WIDE_NODES;
 	
 	public final static String SPARQL_REL_TYPES;
 	public final static String SPARQL_REL_PROPS;
@@ -54,8 +56,10 @@ public class DataTestUtils
 			{
 				final var path = "examples/dummy/";
 				
+				SPARQL_NODE_IRIS = IOUtils.readResource ( path + "/test_node_iris.sparql" );
 				SPARQL_NODE_LABELS = IOUtils.readResource ( path + "/test_node_labels.sparql" );
 				SPARQL_NODE_PROPS = IOUtils.readResource ( path + "/test_node_props.sparql" );
+				SPARQL_WIDE_NODES = IOUtils.readResource ( path + "/test_wide_nodes.sparql" );
 				
 				SPARQL_REL_TYPES = IOUtils.readResource ( path + "/test_rel_types.sparql" );
 				SPARQL_REL_PROPS = IOUtils.readResource ( path + "/test_rel_props.sparql" );
@@ -0,0 +1,55 @@
+package uk.ac.rothamsted.kg.rdf2pg.idconvert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CachingIri2IdConverter}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class CachingIri2IdConverterTest
+{
+	@Test
+	public void testCaching ()
+	{
+		AtomicInteger calls = new AtomicInteger ();
+		Function<String, String> base = iri -> { 
+			calls.incrementAndGet (); 
+			return new DefaultIri2IdConverter ().apply ( iri ); 
+		};
+		
+		var converter = new CachingIri2IdConverter ( base );
+		
+		String id1 = converter.apply ( "http://www.example.com/res/foo" );
+		String id2 = converter.apply ( new String ( "http://www.example.com/res/foo" ) );
+		
+		assertEquals ( "Wrong conversion!", "foo", id1 );
+		assertSame ( "Converted IDs aren't the same instance!", id1, id2 );
+		assertEquals ( "Base converter called more than once!", 1, calls.get () );
+	}
+	
+	@Test
+	public void testMaxSize ()
+	{
+		var converter = new CachingIri2IdConverter ( new DefaultIri2IdConverter (), 2 );
+		for ( int i = 0; i < 10; i++ )
+			assertEquals ( "Wrong conversion!", "foo" + i, converter.apply ( "http://www.example.com/res/foo" + i ) );
+		
+		assertEquals ( "Max size not honoured!", 2, converter.size () );
+	}
+	
+	@Test
+	public void testWrap ()
+	{
+		var converter = CachingIri2IdConverter.wrap ( new DefaultIri2IdConverter () );
+		assertSame ( "Caching converter wrapped twice!", converter, CachingIri2IdConverter.wrap ( converter ) );
+	}
+}
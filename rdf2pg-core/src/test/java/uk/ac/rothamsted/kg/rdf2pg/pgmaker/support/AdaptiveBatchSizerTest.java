@@ -0,0 +1,49 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AdaptiveBatchSizer}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class AdaptiveBatchSizerTest
+{
+	@Test
+	public void testAimd ()
+	{
+		AtomicInteger currentSize = new AtomicInteger ();
+		var sizer = new AdaptiveBatchSizer ( 1000, 100, 2100, 1000, currentSize::set );
+		
+		assertEquals ( "Initial size not notified!", 1000, currentSize.get () );
+		assertEquals ( "Wrong increase step!", 100, sizer.getIncreaseStep () );
+		
+		sizer.batchCompleted ( 1000, 500 );
+		assertEquals ( "Size not increased!", 1100, currentSize.get () );
+
+		sizer.batchCompleted ( 1100, 900 );
+		assertEquals ( "Size changed within the tolerance margin!", 1100, currentSize.get () );
+
+		sizer.batchCompleted ( 1100, 2000 );
+		assertEquals ( "Size not decreased!", 550, currentSize.get () );
+		
+		// Stale results from batches submitted before the decrease are ignored
+		sizer.batchCompleted ( 500, 2000 );
+		assertEquals ( "Stale batch changed the size!", 550, currentSize.get () );
+
+		for ( int i = 0; i < 10; i++ ) sizer.batchCompleted ( sizer.getBatchSize (), 5000 );
+		assertEquals ( "Min size not honoured!", 100, currentSize.get () );
+		
+		for ( int i = 0; i < 100; i++ ) sizer.batchCompleted ( sizer.getBatchSize (), 10 );
+		assertEquals ( "Max size not honoured!", 2100, currentSize.get () );
+
+		sizer.batchFailed ( 2100 );
+		assertEquals ( "Failed batch didn't decrease the size!", 1050, currentSize.get () );
+	}
+}
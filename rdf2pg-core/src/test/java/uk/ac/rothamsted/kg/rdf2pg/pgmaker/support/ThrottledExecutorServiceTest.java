@@ -0,0 +1,54 @@
+package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ThrottledExecutorService}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>17 Oct 2026</dd></dl>
+ *
+ */
+public class ThrottledExecutorServiceTest
+{
+	@Test
+	public void testInFlightLimit () throws InterruptedException
+	{
+		final int maxInFlight = 3;
+		ExecutorService executor = new ThrottledExecutorService ( Executors.newFixedThreadPool ( 10 ), maxInFlight );
+		
+		AtomicInteger running = new AtomicInteger ( 0 ), maxRunning = new AtomicInteger ( 0 ), done = new AtomicInteger ( 0 );
+		for ( int i = 0; i < 50; i++ )
+		{
+			executor.submit ( () -> 
+			{
+				maxRunning.accumulateAndGet ( running.incrementAndGet (), Math::max );
+				try {
+					Thread.sleep ( 5 );
+				}
+				catch ( InterruptedException ex ) {
+					throw new RuntimeException ( ex );
+				}
+				running.decrementAndGet ();
+				done.incrementAndGet ();
+			});
+			int inFlight = ( (ThrottledExecutorService) executor ).getInFlightTasks ();
+			assertTrue ( "In-flight limit exceeded!", inFlight <= maxInFlight );
+		}
+		
+		executor.shutdown ();
+		assertTrue ( "Executor didn't terminate!", executor.awaitTermination ( 1, TimeUnit.MINUTES ) );
+		
+		assertEquals ( "Not all the tasks were executed!", 50, done.get () );
+		assertTrue ( "In-flight limit exceeded!", maxRunning.get () <= maxInFlight );
+		assertEquals ( "In-flight gauge not reset!", 0, ( (ThrottledExecutorService) executor ).getInFlightTasks () );
+	}
+}
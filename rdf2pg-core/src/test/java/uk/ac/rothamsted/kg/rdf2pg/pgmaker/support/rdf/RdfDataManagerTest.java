@@ -2,17 +2,30 @@ package uk.ac.rothamsted.kg.rdf2pg.pgmaker.support.rdf;
 
 import static info.marcobrandizi.rdfutils.namespaces.NamespaceUtils.iri;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -77,6 +90,50 @@ public class RdfDataManagerTest
 	}
 	
 	
+	@Test
+	public void testNodesBatch ()
+	{
+		log.info ( "Verifying Nodes in batch mode" );
+
+		Dataset ds = rdfMgr.getDataSet ();
+		Model m = ds.getDefaultModel ();
+		
+		Set<Resource> nodeRess = new HashSet<> ();
+		for ( String id: new String[] { "ex:1", "ex:2", "ex:3" } )
+			nodeRess.add ( m.getResource ( iri ( id ) ) );
+		
+		Map<String, PGNode> pgNodes = rdfMgr.getPGNodes ( 
+			nodeRess, DataTestUtils.SPARQL_NODE_LABELS, DataTestUtils.SPARQL_NODE_PROPS 
+		)
+		.stream ()
+		.collect ( Collectors.toMap ( PGNode::getIri, n -> n ) );
+		
+		assertEquals ( "Wrong no. of nodes returned!", 3, pgNodes.size () );
+		
+		PGNode pgNode = pgNodes.get ( iri ( "ex:1" ) );
+		assertNotNull ( "PGNode 1 not found!", pgNode );
+		assertEquals ( "PGNode 1's Label not found!", Set.of ( "TestNode" ), pgNode.getLabels () );
+		assertEquals ( "PGNode 1's wrong properties count!", 2, pgNode.getProperties ().size () );
+		assertEquals ( "PGNode 1's prop1 not found!", "10.0", pgNode.getPropValue ( "attrib1" ) );
+		assertEquals ( "PGNode 1's prop2 not found!", "a string", pgNode.getPropValue ( "attrib2" ) );
+
+		pgNode = pgNodes.get ( iri ( "ex:2" ) );
+		assertNotNull ( "PGNode 2 not found!", pgNode );
+		assertEquals ( "PGNode 2's Label not found!", Set.of ( "TestNode" ), pgNode.getLabels () );
+		assertEquals ( "PGNode 2's wrong properties count!", 1, pgNode.getProperties ().size () );
+		assertEquals ( "PGNode 2's prop3 not found!", "another string", pgNode.getPropValue ( "attrib3" ) );
+
+		pgNode = pgNodes.get ( iri ( "ex:3" ) );
+		assertNotNull ( "PGNode 3 not found!", pgNode );
+		assertEquals ( 
+			"PGNode 3's Labels are wrong!", Set.of ( "SuperTestNode", "AdditionalLabel" ), pgNode.getLabels () 
+		);
+		assertTrue ( "PGNode 3 shouldn't have properties!", pgNode.getProperties ().isEmpty () );
+		
+		log.info ( "End" );
+	}
+	
+	
 	@Test
 	public void testRelations () throws Exception
 	{
@@ -129,6 +186,236 @@ public class RdfDataManagerTest
 		);
 		
 		log.info ( "End" );
-	}	
+	}
+	
+	@Test
+	public void testRelationsBatch () throws Exception
+	{
+		log.info ( "Verifying Relations in batch mode" );
+
+		List<PGRelation> pgRelations = new ArrayList<> ();
+		rdfMgr.processRelationIris ( DataTestUtils.SPARQL_REL_TYPES, row -> pgRelations.add ( rdfMgr.getPGRelation ( row ) ) );
+		rdfMgr.setPGRelationsProps ( pgRelations, DataTestUtils.SPARQL_REL_PROPS );
+		
+		assertEquals ( "Wrong no. of relations!", 3, pgRelations.size () );
+		
+		PGRelation pgRelation = pgRelations.stream ()
+		.filter ( rel -> iri ( "ex:2_3" ).equals ( rel.getIri () ) )
+		.findAny ()
+		.orElse ( null );
+		assertNotNull ( "reified relation not found!", pgRelation );
+		assertEquals ( "reified relation, wrong properties count!", 1, pgRelation.getProperties ().size () );
+		assertEquals ( 
+			"reified relation, wrong property value for 'note'!", 
+			Set.of ( "Reified Relation", "Another Note" ), 
+			pgRelation.getPropValues ( "note" ) 
+		);
+		
+		assertTrue ( 
+			"Plain relations shouldn't have properties!", 
+			pgRelations.stream ()
+			.filter ( rel -> !iri ( "ex:2_3" ).equals ( rel.getIri () ) )
+			.allMatch ( rel -> rel.getProperties ().isEmpty () )
+		);
+		
+		log.info ( "End" );
+	}
+	
+	@Test
+	public void testQueryCache ()
+	{
+		Model m = rdfMgr.getDataSet ().getDefaultModel ();
+
+		// Ensures the queries are cached
+		rdfMgr.getPGNode ( m.getResource ( iri ( "ex:1" ) ), DataTestUtils.SPARQL_NODE_LABELS, DataTestUtils.SPARQL_NODE_PROPS );
+		
+		long misses = rdfMgr.getQueryCacheMisses (), hits = rdfMgr.getQueryCacheHits ();
+		
+		PGNode pgNode = rdfMgr.getPGNode ( 
+			m.getResource ( iri ( "ex:2" ) ), DataTestUtils.SPARQL_NODE_LABELS, DataTestUtils.SPARQL_NODE_PROPS 
+		);
+		assertEquals ( "PGNode 2's prop3 not found!", "another string", pgNode.getPropValue ( "attrib3" ) );
+		
+		assertEquals ( "Query cache misses changed!", misses, rdfMgr.getQueryCacheMisses () );
+		assertEquals ( "Query cache hits didn't increase!", hits + 2, rdfMgr.getQueryCacheHits () );
+	}
+	
+	@Test
+	public void testNodesFromPredicates ()
+	{
+		Model m = rdfMgr.getDataSet ().getDefaultModel ();
+		
+		Set<Resource> nodeRess = new HashSet<> ();
+		for ( String id: new String[] { "ex:1", "ex:2", "ex:3" } )
+			nodeRess.add ( m.getResource ( iri ( id ) ) );
+
+		// No SPARQL, just the predicates
+		Collection<PGNode> pgNodes = rdfMgr.getPGNodes ( nodeRess, null, null );
+		rdfMgr.addPGLabels ( pgNodes, RDF.type.getURI () );
+		
+		Map<String, String> propPredicates = new HashMap<> ();
+		propPredicates.put ( iri ( "ex:attrib1" ), "myAttrib1" );
+		propPredicates.put ( iri ( "ex:attrib3" ), null );
+		rdfMgr.addPGProps ( pgNodes, propPredicates );
+		
+		Map<String, PGNode> idx = pgNodes.stream ().collect ( Collectors.toMap ( PGNode::getIri, n -> n ) );
+
+		PGNode pgNode = idx.get ( iri ( "ex:1" ) );
+		assertEquals ( "PGNode 1's Label not found!", Set.of ( "TestNode" ), pgNode.getLabels () );
+		assertEquals ( "PGNode 1's wrong properties count!", 1, pgNode.getProperties ().size () );
+		assertEquals ( "PGNode 1's prop1 not found!", "10.0", pgNode.getPropValue ( "myAttrib1" ) );
+
+		pgNode = idx.get ( iri ( "ex:2" ) );
+		assertEquals ( "PGNode 2's prop3 not found!", "another string", pgNode.getPropValue ( "attrib3" ) );
+
+		pgNode = idx.get ( iri ( "ex:3" ) );
+		assertEquals ( 
+			"PGNode 3's Labels are wrong!", Set.of ( "SuperTestNode", "AdditionalLabel" ), pgNode.getLabels () 
+		);
+		assertTrue ( "PGNode 3 shouldn't have properties!", pgNode.getProperties ().isEmpty () );
+	}
+	
+	@Test
+	public void testWideNodes ()
+	{
+		Map<String, PGNode> pgNodes = new HashMap<> ();
+		long ct = rdfMgr.processWideNodes ( 
+			DataTestUtils.SPARQL_WIDE_NODES, 
+			pgNode -> assertNull ( "Node " + pgNode.getIri () + " returned twice!", pgNodes.put ( pgNode.getIri (), pgNode ) )
+		);
+		
+		assertEquals ( "Wrong no. of nodes returned!", 3, ct );
+		assertEquals ( "Wrong no. of nodes collected!", 3, pgNodes.size () );
+		
+		PGNode pgNode = pgNodes.get ( iri ( "ex:1" ) );
+		assertEquals ( "PGNode 1's Label not found!", Set.of ( "TestNode" ), pgNode.getLabels () );
+		assertEquals ( "PGNode 1's wrong properties count!", 2, pgNode.getProperties ().size () );
+		assertEquals ( "PGNode 1's prop1 not found!", "10.0", pgNode.getPropValue ( "attrib1" ) );
+		assertEquals ( "PGNode 1's prop2 not found!", "a string", pgNode.getPropValue ( "attrib2" ) );
+		
+		pgNode = pgNodes.get ( iri ( "ex:3" ) );
+		assertEquals ( 
+			"PGNode 3's Labels are wrong!", Set.of ( "SuperTestNode", "AdditionalLabel" ), pgNode.getLabels () 
+		);
+		assertTrue ( "PGNode 3 shouldn't have properties!", pgNode.getProperties ().isEmpty () );
+	}
+
+	/**
+	 * A wide row with ?name bound and ?value unbound must be reported clearly, not as an NPE.
+	 */
+	@Test ( expected = IllegalArgumentException.class )
+	public void testWideNodesUnboundValue ()
+	{
+		rdfMgr.processWideNodes (
+			"PREFIX ex: <http://www.example.com/res/>\n"
+			+ "SELECT ?iri ?label ?name ?value {\n"
+			+ "  ?iri a ?label.\n"
+			+ "  BIND ( ex:attrib1 AS ?name )\n"
+			+ "  OPTIONAL { ?iri ex:noSuchProperty ?value }\n"
+			+ "}\n"
+			+ "ORDER BY ?iri",
+			pgNode -> {}
+		);
+	}
+
+	/**
+	 * Tests that read operations reuse an enclosing transaction, without closing it.
+	 */
+	@Test
+	public void testEnclosingTransaction ()
+	{
+		Dataset ds = rdfMgr.getDataSet ();
+		Model m = ds.getDefaultModel ();
+		
+		rdfMgr.executeRead ( () -> 
+		{
+			PGNode pgNode = rdfMgr.getPGNode ( 
+				m.getResource ( iri ( "ex:1" ) ), DataTestUtils.SPARQL_NODE_LABELS, DataTestUtils.SPARQL_NODE_PROPS 
+			);
+			assertEquals ( "PGNode 1's prop1 not found!", "10.0", pgNode.getPropValue ( "attrib1" ) );
+			assertTrue ( "The enclosing transaction was closed!", ds.isInTransaction () );
+			
+			rdfMgr.addPGLabels ( Set.of ( pgNode ), RDF.type.getURI () );
+			assertTrue ( "The enclosing transaction was closed!", ds.isInTransaction () );
+		});
+		
+		assertFalse ( "The enclosing transaction wasn't closed!", ds.isInTransaction () );
+	}
+	
+	@Test
+	public void testNativeLiteralConversion ()
+	{
+		Model m = rdfMgr.getDataSet ().getDefaultModel ();
+		
+		rdfMgr.setNativeLiteralConversion ( true );
+		try
+		{
+			PGNode pgNode = rdfMgr.getPGNode ( 
+				m.getResource ( iri ( "ex:1" ) ), DataTestUtils.SPARQL_NODE_LABELS, DataTestUtils.SPARQL_NODE_PROPS 
+			);
+			assertEquals ( "PGNode 1's prop1 not converted!", 10.0, (double) pgNode.getPropValue ( "attrib1" ), 0d );
+			assertEquals ( "PGNode 1's prop2 not found!", "a string", pgNode.getPropValue ( "attrib2" ) );
+		}
+		finally {
+			rdfMgr.setNativeLiteralConversion ( false );
+		}
+		
+		assertTrue ( "Native converters not removed!", rdfMgr.getLiteralConverters ().isEmpty () );
+		
+		assertEquals ( 
+			"Ill-typed literal not converted into its lexical value!", 
+			"foo", 
+			XsdLiteralConverters.getConverters ().get ( XSDDatatype.XSDint.getURI () )
+				.apply ( NodeFactory.createLiteral ( "foo", XSDDatatype.XSDint ) ) 
+		);
+
+		var boolConverter = XsdLiteralConverters.getConverters ().get ( XSDDatatype.XSDboolean.getURI () );
+		assertEquals ( 
+			"Boolean literal not converted!", true, boolConverter.apply ( NodeFactory.createLiteral ( "1", XSDDatatype.XSDboolean ) ) 
+		);
+		assertEquals ( 
+			"Ill-typed boolean not converted into its lexical value!", 
+			"yes", 
+			boolConverter.apply ( NodeFactory.createLiteral ( "yes", XSDDatatype.XSDboolean ) ) 
+		);
+	}
+	
+	@Test ( expected = IllegalStateException.class )
+	public void testOpenDifferentPath ()
+	{
+		// Already open by the class initialiser
+		rdfMgr.open ( DataTestUtils.TDB_PATH + "-foo" );
+	}
+	
+	@Test
+	public void testPartitionedIris ()
+	{
+		Set<String> iris = new HashSet<> ();
+		rdfMgr.processNodeIris ( DataTestUtils.SPARQL_NODE_IRIS, res -> iris.add ( res.getURI () ) );
+
+		ExecutorService executor = Executors.newFixedThreadPool ( 3 );
+		try
+		{
+			Set<String> partitionedIris = ConcurrentHashMap.newKeySet ();
+			long ct = rdfMgr.processNodeIris ( 
+				DataTestUtils.SPARQL_NODE_IRIS, 3, executor, res -> assertTrue ( 
+					"Duplicated partitioned IRI " + res.getURI (), partitionedIris.add ( res.getURI () ) 
+				)
+			);
+			
+			assertEquals ( "Wrong no. of partitioned IRIs!", iris.size (), ct );
+			assertEquals ( "Partitioned IRIs don't match!", iris, partitionedIris );
+			
+			Set<String> relIris = ConcurrentHashMap.newKeySet ();
+			ct = rdfMgr.processRelationIris ( 
+				DataTestUtils.SPARQL_REL_TYPES, 2, executor, row -> relIris.add ( row.getResource ( "iri" ).getURI () ) 
+			);
+			assertEquals ( "Wrong no. of partitioned relations!", 3, ct );
+			assertEquals ( "Wrong no. of partitioned relation IRIs!", 3, relIris.size () );
+		}
+		finally {
+			executor.shutdownNow ();
+		}
+	}
 	
 }